@@ -0,0 +1,114 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.mu.util.stream.IntIteration;
+import com.google.mu.util.stream.Iteration;
+
+/**
+ * Per-element overhead of in-order traversal through {@link Iteration} and {@link IntIteration},
+ * compared to a hand-written iterator. The tree is implicit: nodes are numbered like a binary
+ * heap, with 2n and 2n + 1 being the children of n.
+ */
+public class IterationBenchmark {
+  @Param({"1000", "100000"})
+  int size;
+
+  @Benchmark
+  long handWrittenIterator(int n) {
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      for (Iterator<Integer> it = new InOrderIterator(size); it.hasNext(); ) {
+        total += it.next();
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  long iteration(int n) {
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      total += new InOrder().from(1).iterate().mapToLong(v -> v).sum();
+    }
+    return total;
+  }
+
+  @Benchmark
+  long intIteration(int n) {
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      total += new IntInOrder().from(1).iterate().asLongStream().sum();
+    }
+    return total;
+  }
+
+  private final class InOrder extends Iteration<Integer> {
+    InOrder from(int node) {
+      if (node > size) return this;
+      yield(() -> from(2 * node));
+      yield(node);
+      yield(() -> from(2 * node + 1));
+      return this;
+    }
+  }
+
+  private final class IntInOrder extends IntIteration {
+    IntInOrder from(int node) {
+      if (node > size) return this;
+      yield(() -> from(2 * node));
+      yield(node);
+      yield(() -> from(2 * node + 1));
+      return this;
+    }
+  }
+
+  /** The classic iterative in-order traversal with an explicit stack. */
+  private static final class InOrderIterator implements Iterator<Integer> {
+    private final int size;
+    private final Deque<Integer> stack = new ArrayDeque<>();
+
+    InOrderIterator(int size) {
+      this.size = size;
+      pushLeft(1);
+    }
+
+    @Override public boolean hasNext() {
+      return !stack.isEmpty();
+    }
+
+    @Override public Integer next() {
+      if (stack.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      int node = stack.pop();
+      pushLeft(2 * node + 1);
+      return node;
+    }
+
+    private void pushLeft(int node) {
+      for (; node <= size; node *= 2) {
+        stack.push(node);
+      }
+    }
+  }
+}
@@ -14,32 +14,37 @@
  *****************************************************************************/
 package com.google.mu.util.stream;
 
-import static com.google.mu.util.stream.BiStream.kv;
-import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collector;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * {@code BiCollection} to {@link BiStream} is like {@code Iterable} to {@code Iterator}:
  * a re-streamable collection of pairs. Suitable when the pairs aren't logically a {@code Map}
  * or {@code Multimap}.
  *
+ * <p>Pairs are stored in two parallel arrays ("columns") rather than as {@code Map.Entry}
+ * objects, and {@link #stream} is sized and evenly splittable for parallel processing.
+ *
  * @since 1.4
  */
 public final class BiCollection<L, R> {
-  private static final BiCollection<?, ?> EMPTY = new BiCollection<>(Collections.emptyList());
+  private static final Object[] NONE = new Object[0];
+  private static final BiCollection<?, ?> EMPTY = new BiCollection<>(NONE, NONE, 0);
 
-  private final Collection<? extends Map.Entry<L, R>> entries;
+  private final Object[] lefts;
+  private final Object[] rights;
+  private final int size;
 
-  private BiCollection(Collection<? extends Entry<L, R>> underlying) {
-    this.entries = requireNonNull(underlying);
+  private BiCollection(Object[] lefts, Object[] rights, int size) {
+    this.lefts = lefts;
+    this.rights = rights;
+    this.size = size;
   }
 
   /** Returns an empty {@code BiCollection}. */
@@ -50,31 +55,32 @@ public final class BiCollection<L, R> {
 
   /** Returns a {@code BiCollection} for {@code left} and {@code right}. */
   public static <L, R> BiCollection<L, R> of(L left, R right) {
-    return new BiCollection<>(asList(kv(left, right)));
+    return columns(new Object[] {left}, new Object[] {right});
   }
 
   /** Returns a {@code BiCollection} for two pairs. */
   public static <L, R> BiCollection<L, R> of(L left1, R right1, L left2, R right2) {
-    return new BiCollection<>(asList(kv(left1, right1), kv(left2, right2)));
+    return columns(new Object[] {left1, left2}, new Object[] {right1, right2});
   }
 
   /** Returns a {@code BiCollection} for three pairs. */
   public static <L, R> BiCollection<L, R> of(L left1, R right1, L left2, R right2, L left3, R right3) {
-    return new BiCollection<>(asList(kv(left1, right1), kv(left2, right2), kv(left3, right3)));
+    return columns(new Object[] {left1, left2, left3}, new Object[] {right1, right2, right3});
   }
 
   /** Returns a {@code BiCollection} for four pairs. */
   public static <L, R> BiCollection<L, R> of(
       L left1, R right1, L left2, R right2, L left3, R right3, L left4, R right4) {
-    return new BiCollection<>(
-        asList(kv(left1, right1), kv(left2, right2), kv(left3, right3), kv(left4, right4)));
+    return columns(
+        new Object[] {left1, left2, left3, left4}, new Object[] {right1, right2, right3, right4});
   }
 
   /** Returns a {@code BiCollection} for five pairs. */
   public static <L, R> BiCollection<L, R> of(
       L left1, R right1, L left2, R right2, L left3, R right3, L left4, R right4, L left5, R right5) {
-    return new BiCollection<>(asList(
-        kv(left1, right1), kv(left2, right2), kv(left3, right3), kv(left4, right4), kv(left5, right5)));
+    return columns(
+        new Object[] {left1, left2, left3, left4, left5},
+        new Object[] {right1, right2, right3, right4, right5});
   }
 
   /**
@@ -89,38 +95,114 @@ public final class BiCollection<L, R> {
       Function<? super T, ? extends R> rightFunction) {
     requireNonNull(leftFunction);
     requireNonNull(rightFunction);
-    Function<T, Map.Entry<L, R>> toEntry = x -> kv(leftFunction.apply(x), rightFunction.apply(x));
-    Collector<T, ?, ? extends Collection<Map.Entry<L, R>>> entryCollector =
-        Collectors.mapping(toEntry, Collectors.toList());
-    return Collectors.collectingAndThen(entryCollector, BiCollection::new);
+    return Collector.of(
+        Builder<L, R>::new,
+        (builder, x) -> builder.add(leftFunction.apply(x), rightFunction.apply(x)),
+        Builder::addAll,
+        Builder::build);
   }
 
   /** Returns the size of the collection. */
   public int size() {
-    return entries.size();
+    return size;
   }
 
   /** Streams over this {@code BiCollection}. */
   public BiStream<L, R> stream() {
-    return BiStream.fromEntries(entries.stream());
+    return BiStream.indexed(IntStream.range(0, size), this::left, this::right);
   }
 
   /** @since 1.5 */
   @Override public int hashCode() {
-    return entries.hashCode();
+    // Same as List<Map.Entry<L, R>>.hashCode()
+    int hash = 1;
+    for (int i = 0; i < size; i++) {
+      hash = 31 * hash + (Objects.hashCode(lefts[i]) ^ Objects.hashCode(rights[i]));
+    }
+    return hash;
   }
 
   /** @since 1.5 */
   @Override public boolean equals(Object obj) {
     if (obj instanceof BiCollection<?, ?>) {
       BiCollection<?, ?> that = (BiCollection<?, ?>) obj;
-      return entries.equals(that.entries);
+      if (size != that.size) {
+        return false;
+      }
+      for (int i = 0; i < size; i++) {
+        if (!Objects.equals(lefts[i], that.lefts[i])
+            || !Objects.equals(rights[i], that.rights[i])) {
+          return false;
+        }
+      }
+      return true;
     }
     return false;
   }
 
   /** @since 1.5 */
   @Override public String toString() {
-    return entries.toString();
+    return stream().mapToObj((l, r) -> l + "=" + r).collect(joining(", ", "[", "]"));
+  }
+
+  @SuppressWarnings("unchecked") // Only L is ever stored in lefts
+  private L left(int index) {
+    return (L) lefts[index];
+  }
+
+  @SuppressWarnings("unchecked") // Only R is ever stored in rights
+  private R right(int index) {
+    return (R) rights[index];
+  }
+
+  private static <L, R> BiCollection<L, R> columns(Object[] lefts, Object[] rights) {
+    return new BiCollection<>(lefts, rights, lefts.length);
+  }
+
+  /**
+   * Returns a {@code BiCollection} that takes ownership of the first {@code size} elements of
+   * {@code lefts} and {@code rights}, which must no longer be modified.
+   */
+  static <L, R> BiCollection<L, R> columns(Object[] lefts, Object[] rights, int size) {
+    return size == 0 ? of() : new BiCollection<>(lefts, rights, size);
+  }
+
+  /** Accumulates pairs into growable columns. */
+  private static final class Builder<L, R> {
+    private Object[] lefts = NONE;
+    private Object[] rights = NONE;
+    private int size = 0;
+
+    void add(L left, R right) {
+      ensureCapacity(size + 1);
+      lefts[size] = left;
+      rights[size] = right;
+      size++;
+    }
+
+    Builder<L, R> addAll(Builder<L, R> that) {
+      ensureCapacity(size + that.size);
+      System.arraycopy(that.lefts, 0, lefts, size, that.size);
+      System.arraycopy(that.rights, 0, rights, size, that.size);
+      size += that.size;
+      return this;
+    }
+
+    BiCollection<L, R> build() {
+      if (size == 0) {
+        return of();
+      }
+      return size == lefts.length
+          ? columns(lefts, rights)
+          : columns(Arrays.copyOf(lefts, size), Arrays.copyOf(rights, size));
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > lefts.length) {
+        int newLength = Math.max(capacity, Math.max(10, lefts.length + (lefts.length >> 1)));
+        lefts = Arrays.copyOf(lefts, newLength);
+        rights = Arrays.copyOf(rights, newLength);
+      }
+    }
   }
 }
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 import java.util.function.ToDoubleBiFunction;
 import java.util.function.ToIntBiFunction;
@@ -34,6 +35,7 @@ import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.google.mu.function.BiComparator;
 import com.google.mu.util.Both;
 
 /**
@@ -53,6 +55,12 @@ import com.google.mu.util.Both;
  * @since 3.0
  */
 public final class BiCollectors {
+  /**
+   * The collector returned by {@link #toMap()}. {@link BiStream} recognizes it to collect into a
+   * presized map.
+   */
+  static final BiCollector<Object, Object, Map<Object, Object>> TO_MAP = Collectors::toMap;
+
   /**
    * Returns a {@link BiCollector} that collects the key-value pairs into an immutable {@link Map}.
    *
@@ -60,8 +68,9 @@ public final class BiCollectors {
    * a {@code BiStream<K, LinkedList<V>>} and need to collect it into {@code Map<K, List<V>>},
    * you'll need to call {@code collect(toMap())} instead of {@link BiStream#toMap()}.
    */
+  @SuppressWarnings("unchecked") // The singleton is stateless
   public static <K, V> BiCollector<K, V, Map<K, V>> toMap() {
-    return Collectors::toMap;
+    return (BiCollector<K, V, Map<K, V>>) (BiCollector<?, ?, ?>) TO_MAP;
   }
 
   /**
@@ -133,6 +142,71 @@ public final class BiCollectors {
         Collectors.collectingAndThen(Collectors.toSet(), Set::size));
   }
 
+  /**
+   * Returns a {@link BiCollector} that approximately counts the number of distinct input entries
+   * according to {@link Object#hashCode} of both keys and values.
+   *
+   * <p>Unlike {@link #countingDistinct}, which keeps all distinct entries in memory, this collector
+   * uses a HyperLogLog sketch of constant 16KB memory with a typical relative error of about 0.8%.
+   * Sketches from parallel streams are merged losslessly.
+   *
+   * <p>Because only hash codes are used, entries with colliding hash codes are counted once. Small
+   * counts (up to a few thousand) are usually exact.
+   *
+   * @since 5.3
+   */
+  public static <K, V> BiCollector<K, V, Long> approximateCountingDistinct() {
+    return new BiCollector<K, V, Long>() {
+      @Override
+      public <E> Collector<E, ?, Long> splitting(Function<E, K> toKey, Function<E, V> toValue) {
+        return Collector.of(
+            HyperLogLog::new,
+            (hll, e) -> hll.add(toKey.apply(e), toValue.apply(e)),
+            HyperLogLog::merge,
+            HyperLogLog::estimate,
+            Collector.Characteristics.UNORDERED);
+      }
+    };
+  }
+
+  /**
+   * Returns a {@link BiCollector} that estimates the quantiles of a {@code double}-valued
+   * {@code mapper} applied to the input pairs. The result function maps a rank in {@code [0, 1]}
+   * to the estimated value at that rank. For example, to get the median and the 99th percentile of
+   * request latencies:
+   *
+   * <pre>{@code
+   * DoubleUnaryOperator latencies = BiStream.from(requests, Request::endpoint, Request::latency)
+   *     .collect(approximateQuantiles((endpoint, latency) -> latency.toMillis()));
+   * double median = latencies.applyAsDouble(0.5);
+   * double p99 = latencies.applyAsDouble(0.99);
+   * }</pre>
+   *
+   * <p>Uses a KLL sketch, which keeps a few hundred values in memory regardless of the input size,
+   * with a typical rank error under 2%. Sketches from parallel streams are merged.
+   *
+   * <p>The result function returns {@code NaN} if there is no input, and throws {@link
+   * IllegalArgumentException} if the rank is not in {@code [0, 1]}.
+   *
+   * @since 5.3
+   */
+  public static <K, V> BiCollector<K, V, DoubleUnaryOperator> approximateQuantiles(
+      ToDoubleBiFunction<? super K, ? super V> mapper) {
+    requireNonNull(mapper);
+    return new BiCollector<K, V, DoubleUnaryOperator>() {
+      @Override
+      public <E> Collector<E, ?, DoubleUnaryOperator> splitting(
+          Function<E, K> toKey, Function<E, V> toValue) {
+        return Collector.of(
+            QuantileSketch::new,
+            (sketch, e) -> sketch.add(mapper.applyAsDouble(toKey.apply(e), toValue.apply(e))),
+            QuantileSketch::merge,
+            QuantileSketch::quantiles,
+            Collector.Characteristics.UNORDERED);
+      }
+    };
+  }
+
   /**
    * Returns a {@link BiCollector} that produces the sum of an integer-valued
    * function applied to the input pair.  If no input entries are present,
@@ -549,5 +623,106 @@ public final class BiCollectors {
         downstream.<Map.Entry<? extends K1, ? extends V1>>splitting(Map.Entry::getKey, Map.Entry::getValue));
   }
 
+  /**
+   * Returns a {@link BiCollector} that selects the {@code k} greatest pairs according to
+   * {@code comparator}, greatest first. For example, to find the 100 most populous cities:
+   *
+   * <pre>{@code
+   * BiStream<City, Long> top100 = BiStream.from(populationByCity)
+   *     .collect(topK(100, comparingValue(naturalOrder())));
+   * }</pre>
+   *
+   * <p>Only {@code k} pairs are retained in a bounded heap, so selecting from {@code n} pairs
+   * takes {@code O(n log k)} time and {@code O(k)} memory, as opposed to collecting and then sorting
+   * all of them. Partial results from parallel streams are merged in {@code O(k log k)}.
+   *
+   * <p>Pairs that compare equal are retained in no particular order.
+   *
+   * @throws IllegalArgumentException if {@code k} isn't positive
+   * @since 5.3
+   */
+  public static <K, V> BiCollector<K, V, BiStream<K, V>> topK(
+      int k, BiComparator<? super K, ? super V> comparator) {
+    requireNonNull(comparator);
+    if (k <= 0) {
+      throw new IllegalArgumentException("k (" + k + ") must be positive");
+    }
+    return new BiCollector<K, V, BiStream<K, V>>() {
+      @Override
+      public <E> Collector<E, ?, BiStream<K, V>> splitting(
+          Function<E, K> toKey, Function<E, V> toValue) {
+        return Collector.of(
+            () -> new TopK<K, V>(k, comparator),
+            (top, e) -> top.add(toKey.apply(e), toValue.apply(e)),
+            TopK::addAll,
+            TopK::greatestFirst);
+      }
+    };
+  }
+
+  /**
+   * Returns a {@link BiCollector} that approximately finds the most frequent keys along with their
+   * estimated occurrence counts, most frequent first. For example, to find the top search queries
+   * out of billions of log entries:
+   *
+   * <pre>{@code
+   * BiStream<Query, Long> topQueries = BiStream.from(logs, LogEntry::query, LogEntry::user)
+   *     .collect(heavyHitters(1000))
+   *     .limit(100);
+   * }</pre>
+   *
+   * <p>Equivalent to {@code heavyHitters(capacity, (k, v) -> 1)}.
+   *
+   * @throws IllegalArgumentException if {@code capacity} isn't positive
+   * @since 5.3
+   */
+  public static <K, V> BiCollector<K, V, BiStream<K, Long>> heavyHitters(int capacity) {
+    return heavyHitters(capacity, (k, v) -> 1);
+  }
+
+  /**
+   * Returns a {@link BiCollector} that approximately finds the keys with the greatest total
+   * {@code weight}, along with their estimated total weights, heaviest first. For example, to find
+   * the users who downloaded the most bytes:
+   *
+   * <pre>{@code
+   * BiStream<UserId, Long> topDownloaders = BiStream.from(downloads, Download::user, d -> d)
+   *     .collect(heavyHitters(1000, (user, download) -> download.bytes()))
+   *     .limit(10);
+   * }</pre>
+   *
+   * <p>Uses the Space-Saving algorithm with at most {@code capacity} counters, so memory stays
+   * {@code O(capacity)} regardless of the number of distinct keys. If the total weight is
+   * {@code N}, every key whose true weight exceeds {@code N / capacity} is guaranteed to be in the
+   * result, and each estimated weight may overestimate the true weight by at most
+   * {@code N / capacity}. Use a {@code capacity} several times the number of keys you are
+   * interested in for accurate ranking. Partial results from parallel streams are merged.
+   *
+   * @throws IllegalArgumentException if {@code capacity} isn't positive, or (during collection)
+   *     if {@code weight} returns a negative value
+   * @since 5.3
+   */
+  public static <K, V> BiCollector<K, V, BiStream<K, Long>> heavyHitters(
+      int capacity, ToLongBiFunction<? super K, ? super V> weight) {
+    requireNonNull(weight);
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity (" + capacity + ") must be positive");
+    }
+    return new BiCollector<K, V, BiStream<K, Long>>() {
+      @Override
+      public <E> Collector<E, ?, BiStream<K, Long>> splitting(
+          Function<E, K> toKey, Function<E, V> toValue) {
+        return Collector.of(
+            () -> new SpaceSaving<K>(capacity),
+            (summary, e) -> {
+              K key = toKey.apply(e);
+              summary.add(key, weight.applyAsLong(key, toValue.apply(e)));
+            },
+            SpaceSaving::merge,
+            SpaceSaving::mostFrequentFirst);
+      }
+    };
+  }
+
   private BiCollectors() {}
 }
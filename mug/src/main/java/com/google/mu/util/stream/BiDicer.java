@@ -0,0 +1,173 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Dices the pairs of a {@link BiStream} into {@link BiCollection} chunks. Like {@link
+ * MoreStreams#dice(Spliterator, int)}, each split of the underlying spliterator is diced
+ * independently, so parallel streams stay parallel. Keys and values are copied straight into the
+ * columns of each chunk.
+ */
+abstract class BiDicer<K, V, S extends Spliterator<?>>
+    implements Spliterator<BiCollection<K, V>> {
+  // Don't preallocate a large chunk for an unknown-size stream.
+  private static final int MAX_INITIAL_CAPACITY = 8192;
+
+  final S underlying;
+  final int maxSize;
+  private Object[] keys;
+  private Object[] values;
+  private int size;
+
+  BiDicer(S underlying, int maxSize) {
+    this.underlying = underlying;
+    this.maxSize = maxSize;
+  }
+
+  static <K, V> Stream<BiCollection<K, V>> dice(
+      Stream<? extends Map.Entry<? extends K, ? extends V>> entries, int maxSize) {
+    checkMaxSize(maxSize);
+    return StreamSupport.stream(
+            () -> new EntryDicer<K, V>(entries.spliterator(), maxSize),
+            Spliterator.NONNULL,
+            entries.isParallel())
+        .onClose(entries::close);
+  }
+
+  static <K, V> Stream<BiCollection<K, V>> dice(
+      IntStream indexes,
+      IntFunction<? extends K> toKey,
+      IntFunction<? extends V> toValue,
+      int maxSize) {
+    requireNonNull(toKey);
+    requireNonNull(toValue);
+    checkMaxSize(maxSize);
+    return StreamSupport.stream(
+            () -> new IndexDicer<K, V>(indexes.spliterator(), toKey, toValue, maxSize),
+            Spliterator.NONNULL,
+            indexes.isParallel())
+        .onClose(indexes::close);
+  }
+
+  /** Adds the next pair from the underlying spliterator through {@link #add}, if any. */
+  abstract boolean advance();
+
+  abstract BiDicer<K, V, S> wrap(S split);
+
+  final void add(K key, V value) {
+    if (size == keys.length) {
+      int capacity = (int) Math.min(maxSize, Math.max(16L, size * 2L));
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+  }
+
+  @Override public final boolean tryAdvance(Consumer<? super BiCollection<K, V>> action) {
+    requireNonNull(action);
+    int capacity =
+        (int) Math.min(underlying.estimateSize(), Math.min(maxSize, MAX_INITIAL_CAPACITY));
+    keys = new Object[capacity];
+    values = new Object[capacity];
+    size = 0;
+    while (size < maxSize && advance()) {}
+    if (size == 0) {
+      return false;
+    }
+    BiCollection<K, V> chunk = BiCollection.columns(keys, values, size);
+    keys = values = null;
+    action.accept(chunk);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked") // S.trySplit() always returns S
+  @Override public final Spliterator<BiCollection<K, V>> trySplit() {
+    S split = (S) underlying.trySplit();
+    return split == null ? null : wrap(split);
+  }
+
+  @Override public final long estimateSize() {
+    long pairs = underlying.estimateSize();
+    return pairs == Long.MAX_VALUE ? Long.MAX_VALUE : (pairs + maxSize - 1) / maxSize;
+  }
+
+  @Override public final int characteristics() {
+    return Spliterator.NONNULL | (underlying.characteristics() & Spliterator.ORDERED);
+  }
+
+  private static void checkMaxSize(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+  }
+
+  private static final class EntryDicer<K, V>
+      extends BiDicer<K, V, Spliterator<? extends Map.Entry<? extends K, ? extends V>>> {
+    private final Consumer<Map.Entry<? extends K, ? extends V>> addEntry =
+        e -> add(e.getKey(), e.getValue());
+
+    EntryDicer(Spliterator<? extends Map.Entry<? extends K, ? extends V>> entries, int maxSize) {
+      super(entries, maxSize);
+    }
+
+    @Override boolean advance() {
+      return underlying.tryAdvance(addEntry);
+    }
+
+    @Override EntryDicer<K, V> wrap(
+        Spliterator<? extends Map.Entry<? extends K, ? extends V>> split) {
+      return new EntryDicer<>(split, maxSize);
+    }
+  }
+
+  private static final class IndexDicer<K, V> extends BiDicer<K, V, Spliterator.OfInt> {
+    private final IntFunction<? extends K> toKey;
+    private final IntFunction<? extends V> toValue;
+    private final IntConsumer addIndex;
+
+    IndexDicer(
+        Spliterator.OfInt indexes,
+        IntFunction<? extends K> toKey,
+        IntFunction<? extends V> toValue,
+        int maxSize) {
+      super(indexes, maxSize);
+      this.toKey = toKey;
+      this.toValue = toValue;
+      this.addIndex = i -> add(toKey.apply(i), toValue.apply(i));
+    }
+
+    @Override boolean advance() {
+      return underlying.tryAdvance(addIndex);
+    }
+
+    @Override IndexDicer<K, V> wrap(Spliterator.OfInt split) {
+      return new IndexDicer<>(split, toKey, toValue, maxSize);
+    }
+  }
+}
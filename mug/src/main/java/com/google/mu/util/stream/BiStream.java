@@ -31,11 +31,13 @@ import static java.util.stream.StreamSupport.stream;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.Spliterator;
 import java.util.Spliterators.AbstractDoubleSpliterator;
 import java.util.Spliterators.AbstractIntSpliterator;
@@ -49,12 +51,14 @@ import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
 import java.util.function.Function;
 import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.function.ToDoubleBiFunction;
 import java.util.function.ToIntBiFunction;
 import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Collector.Characteristics;
 import java.util.stream.Collectors;
@@ -102,6 +106,7 @@ import com.google.mu.util.Both;
  */
 public abstract class BiStream<K, V> implements AutoCloseable {
   private static final boolean NOT_PARALLEL = false;
+  private static final int MAX_PRESIZE_FOR_ESTIMATE = 1 << 16;
   /**
    * Builder for {@link BiStream}. Similar to {@link Stream.Builder}, entries may not be added after
    * {@link #build} is called.
@@ -231,6 +236,42 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     return collectingAndThen(grouping, BiStream::from);
   }
 
+  /**
+   * Returns a {@code Collector} that groups the consecutive runs of input elements sharing the
+   * same key according to {@code classifier}, with each run collected by {@code valueCollector}.
+   *
+   * <p>Unlike {@link #groupingBy(Function, Collector)}, no map is built. If the input is
+   * clustered by key (such as when it's sorted), the result is the same as {@code groupingBy()}.
+   * Otherwise, a key that reappears after another key starts a new group.
+   *
+   * <p>Each group is finished by {@code valueCollector} once the next group starts, so only the
+   * results of the closed groups are retained, plus the accumulators of the current group and
+   * of the first group (which may still need to be combined with a preceding parallel chunk).
+   *
+   * <p>Combined with {@link #consecutiveRunsFrom(Stream, Function, Collector)}, multi-level
+   * grouping of sorted input can be streamed, with each top-level group emitted as soon as it
+   * closes:
+   *
+   * <pre>{@code
+   * BiStream<State, BiStream<County, Long>> populationByCounty =
+   *     consecutiveRunsFrom(
+   *         residentsSortedByStateAndCounty,
+   *         Resident::state,
+   *         groupingConsecutive(Resident::county, counting()));
+   * }</pre>
+   *
+   * <p>When used with a parallel stream, runs straddling chunk boundaries are merged using the
+   * combiner of {@code valueCollector}.
+   *
+   * @since 5.3
+   */
+  public static <T, K, V> Collector<T, ?, BiStream<K, V>> groupingConsecutive(
+      Function<? super T, ? extends K> classifier, Collector<? super T, ?, V> valueCollector) {
+    return collectingAndThen(
+        ConsecutiveRuns.collecting(classifier, valueCollector),
+        runs -> fromEntries(runs.stream()));
+  }
+
   /**
    * @deprecated Use {@code MoreStreams.flatMapping(toKeyValues, BiCollectors.groupingBy(k -> k, reducer))}.
    */
@@ -304,6 +345,32 @@ public abstract class BiStream<K, V> implements AutoCloseable {
             left.isEmpty() ? empty() : concat(right.map(r -> from(left, identity(), l -> r))));
   }
 
+  /**
+   * Returns the pairs of elements from {@code left} and {@code right} that satisfy {@code
+   * condition}. For example:
+   *
+   * <pre>{@code
+   * BiStream<Listing, Listing> candidateDuplicates =
+   *     BiStream.crossJoin(newListings.stream(), existingListings.stream(), Listing::isNear);
+   * }</pre>
+   *
+   * <p>Unlike {@link #crossJoining}, both sides are buffered, and the cross product is evaluated
+   * in cache-sized tiles, each pairing a block of left elements with a block of right elements.
+   * {@code condition} is tested before any pair is created, so rejected pairs cost no allocation.
+   * Within each tile, pairs are in the same order as {@link #crossJoining}; tiles are emitted
+   * block by block.
+   *
+   * <p>If {@code left} is parallel, the tiles are evaluated in parallel.
+   *
+   * <p>Both input streams are consumed upon the terminal operation of the returned stream.
+   *
+   * @since 5.3
+   */
+  public static <L, R> BiStream<L, R> crossJoin(
+      Stream<L> left, Stream<R> right, BiPredicate<? super L, ? super R> condition) {
+    return Joins.blockedCrossJoin(left, right, condition);
+  }
+
   /**
    * Returns a {@code Collector} that accumulates every neighboring pair of elements into a new
    * {@code BiStream}. For example {@code Stream.of(1, 2, 3, 4).collect(toAdjacentPairs())} will
@@ -475,9 +542,24 @@ public abstract class BiStream<K, V> implements AutoCloseable {
    * <p>The resulting stream will only be as long as the shorter of the two iterables; if one is
    * longer, its extra elements will be ignored.
    *
+   * <p>If both {@code left} and {@code right} are {@link RandomAccess} lists (such as {@code
+   * ArrayList}, {@code ImmutableList} or {@code Arrays.asList()}), the pairs are looked up by index,
+   * and the resulting stream is sized and efficiently splittable if run in parallel.
+   *
    * @since 3.0
    */
   public static <L, R> BiStream<L, R> zip(Collection<L> left, Collection<R> right) {
+    if (left instanceof List && left instanceof RandomAccess
+        && right instanceof List && right instanceof RandomAccess) {
+      List<L> leftList = (List<L>) left;
+      List<R> rightList = (List<R>) right;
+      // Late-binding, like the lists' own spliterators.
+      IntStream indexes = intStream(
+          () -> IntStream.range(0, Math.min(leftList.size(), rightList.size())).spliterator(),
+          Spliterator.SIZED | Spliterator.SUBSIZED | ORDERED,
+          NOT_PARALLEL);
+      return indexed(indexes, leftList::get, rightList::get);
+    }
     return zip(left.stream(), right.stream());
   }
 
@@ -658,6 +740,13 @@ public abstract class BiStream<K, V> implements AutoCloseable {
    *
    * <p>Null elements are allowed as long as the {@code by} function allows nulls.
    *
+   * <p>If {@code stream} is parallel and its source is {@link Spliterator#SIZED sized} and
+   * {@link Spliterator#ORDERED ordered} (such as {@code list.parallelStream()}), the input is
+   * partitioned and the runs of each chunk are computed concurrently, with runs that straddle chunk
+   * boundaries merged using the combiner of {@code runSummarizer}. In this case all the runs are
+   * computed upon the terminal operation of the returned stream, instead of one run at a time.
+   * Otherwise, including for infinite parallel streams, runs are computed lazily one at a time.
+   *
    * @param stream the stream of input elements
    * @param by the function to compute the key of each element
    * @param runSummarizer collector to summarize elements of the same "run"
@@ -675,13 +764,14 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     final int characteristics = Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.DISTINCT;
 
     class Runner extends AbstractSpliterator<Map.Entry<K, R>> implements Consumer<T> {
-      private final Spliterator<? extends T> spliterator = stream.spliterator();
+      private final Spliterator<? extends T> spliterator;
       private K currentKey;
       private A currentRun = null;
       private Map.Entry<K, R> completedRun = null;
 
-      Runner() {
+      Runner(Spliterator<? extends T> spliterator) {
         super(Long.MAX_VALUE, characteristics);
+        this.spliterator = spliterator;
       }
 
       @Override public boolean tryAdvance(Consumer<? super Map.Entry<K, R>> action) {
@@ -722,7 +812,109 @@ public abstract class BiStream<K, V> implements AutoCloseable {
         completedRun = kv(currentKey, finisher.apply(currentRun));
       }
     };
-    return fromEntries(StreamSupport.stream(Runner::new, characteristics, NOT_PARALLEL));
+    Supplier<Spliterator<Map.Entry<K, R>>> runs = () -> {
+      Spliterator<T> source = stream.spliterator();
+      if (stream.isParallel()
+          && source.hasCharacteristics(Spliterator.SIZED | Spliterator.ORDERED)) {
+        return StreamSupport.stream(source, true)
+            .collect(ConsecutiveRuns.<T, K, A, R>collecting(by, runSummarizer))
+            .spliterator();
+      }
+      return new Runner(source);
+    };
+    return fromEntries(
+        StreamSupport.stream(runs, characteristics, NOT_PARALLEL).onClose(stream::close));
+  }
+
+  /**
+   * Returns a lazy {@code BiStream} of the fixed-size, non-overlapping time windows over the
+   * (possibly infinite) input {@code stream}, each summarized by {@code windowSummarizer}.
+   * For example, to compute per-minute latency stats from a stream of requests:
+   *
+   * <pre>{@code
+   * tumblingWindowsFrom(requests, Request::timestampMillis, 60_000, summarizingLong(Request::latency))
+   * }</pre>
+   *
+   * <p>Windows are aligned to multiples of {@code size}, so {@code [0, size)},
+   * {@code [size, 2 * size)} etc. Windows without any element are skipped.
+   *
+   * <p>Like {@link #consecutiveRunsFrom(Stream, Function, Collector)}, elements are accumulated
+   * incrementally and each window is emitted as soon as an element past its end is seen, so only
+   * one window is held in memory at any time.
+   *
+   * @param stream the input elements, ordered by {@code timestamp}
+   * @param timestamp the function to compute the timestamp of each element
+   * @param size the size of each window
+   * @param windowSummarizer collector to summarize elements of the same window
+   * @throws IllegalArgumentException if {@code size} isn't positive, or (during iteration)
+   *     if timestamps are out of order
+   * @since 5.3
+   */
+  public static <T, R> BiStream<Window, R> tumblingWindowsFrom(
+      Stream<T> stream,
+      ToLongFunction<? super T> timestamp,
+      long size,
+      Collector<? super T, ?, R> windowSummarizer) {
+    return Windowing.sliding(stream, timestamp, size, size, windowSummarizer);
+  }
+
+  /**
+   * Returns a lazy {@code BiStream} of the possibly overlapping time windows of {@code size} that
+   * start every {@code slide}, over the (possibly infinite) input {@code stream}, each summarized by
+   * {@code windowSummarizer}. For example, a 5-minute moving average updated every minute:
+   *
+   * <pre>{@code
+   * slidingWindowsFrom(prices, Price::epochMinute, 5, 1, averagingDouble(Price::value))
+   * }</pre>
+   *
+   * <p>Windows start at multiples of {@code slide}, and each element is accumulated into every
+   * window that contains it. At most {@code ceil(size / slide)} windows are open at any time.
+   * Windows without any element are skipped.
+   *
+   * @param stream the input elements, ordered by {@code timestamp}
+   * @param timestamp the function to compute the timestamp of each element
+   * @param size the size of each window
+   * @param slide the distance between the starts of two adjacent windows
+   * @param windowSummarizer collector to summarize elements of the same window
+   * @throws IllegalArgumentException if {@code size} or {@code slide} isn't positive, or
+   *     (during iteration) if timestamps are out of order
+   * @since 5.3
+   */
+  public static <T, R> BiStream<Window, R> slidingWindowsFrom(
+      Stream<T> stream,
+      ToLongFunction<? super T> timestamp,
+      long size,
+      long slide,
+      Collector<? super T, ?, R> windowSummarizer) {
+    return Windowing.sliding(stream, timestamp, size, slide, windowSummarizer);
+  }
+
+  /**
+   * Returns a lazy {@code BiStream} of the session windows over the (possibly infinite) input
+   * {@code stream}, each summarized by {@code windowSummarizer}. A session ends when no element
+   * arrives within {@code gap} of the previous one. For example, to count clicks per user session:
+   *
+   * <pre>{@code
+   * sessionWindowsFrom(clicks, Click::timestamp, Duration.ofMinutes(30).toMillis(), counting())
+   * }</pre>
+   *
+   * <p>Each window spans from the timestamp of its first element to {@code gap} past its last
+   * element. Only the current session is held in memory.
+   *
+   * @param stream the input elements, ordered by {@code timestamp}
+   * @param timestamp the function to compute the timestamp of each element
+   * @param gap the inactivity gap that separates two sessions
+   * @param windowSummarizer collector to summarize elements of the same session
+   * @throws IllegalArgumentException if {@code gap} isn't positive, or (during iteration)
+   *     if timestamps are out of order
+   * @since 5.3
+   */
+  public static <T, R> BiStream<Window, R> sessionWindowsFrom(
+      Stream<T> stream,
+      ToLongFunction<? super T> timestamp,
+      long gap,
+      Collector<? super T, ?, R> windowSummarizer) {
+    return Windowing.session(stream, timestamp, gap, windowSummarizer);
   }
 
   static <K, V, E extends Map.Entry<? extends K, ? extends V>> BiStream<K, V> fromEntries(
@@ -758,6 +950,16 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     };
   }
 
+  /**
+   * Returns a {@code BiStream} of the pairs at {@code indexes}, with the key and value of each pair
+   * looked up by index. The result is as sized and splittable as {@code indexes} is, and no
+   * intermediary {@code Map.Entry} is allocated unless required.
+   */
+  static <K, V> BiStream<K, V> indexed(
+      IntStream indexes, IntFunction<? extends K> toKey, IntFunction<? extends V> toValue) {
+    return new IndexedStream<>(indexes, toKey, toValue);
+  }
+
   Stream<? extends Map.Entry<? extends K, ? extends V>> mapToEntry() {
     return mapToObj(BiStream::kv);
   }
@@ -1046,6 +1248,36 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     return mapKeys(keyMapper).<K2>mapKeys(BiStream::orElseNull).filterKeys(Objects::nonNull);
   }
 
+  /**
+   * Returns a {@code BiStream} of pairs whose keys are looked up in batches of up to {@code
+   * batchSize} pairs, using {@code batchLookup}, and whose values are unchanged. Keys not found in
+   * the map returned by {@code batchLookup} (or mapped to null) are discarded.
+   *
+   * <p>Useful when each lookup is a remote call. For example, the following code issues one
+   * {@code getUsers()} RPC for every 100 pairs instead of one RPC per pair:
+   *
+   * <pre>{@code
+   * BiStream.from(scoresByUserId)
+   *     .mapKeysIfPresent(100, userIds -> userService.getUsers(userIds))
+   *     ...;
+   * }</pre>
+   *
+   * <p>Each batch's keys are de-duplicated before being passed to {@code batchLookup}. Encounter
+   * order is preserved. If this stream is parallel, batches are looked up concurrently.
+   *
+   * @throws IllegalArgumentException if {@code batchSize <= 0}
+   * @since 5.3
+   */
+  public final <K2> BiStream<K2, V> mapKeysIfPresent(
+      int batchSize,
+      Function<? super List<K>, ? extends Map<? super K, ? extends K2>> batchLookup) {
+    requireNonNull(batchLookup);
+    return concat(dice(batchSize).map(batch -> {
+      List<K> keys = batch.stream().keys().distinct().collect(toList());
+      return batch.stream().<K2>mapKeysIfPresent(requireNonNull(batchLookup.apply(keys)));
+    }));
+  }
+
   /**
    * Maps each value to zero or more values of type {@code V2}.
    *
@@ -1148,6 +1380,32 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     return mapValues(valueMapper).<V2>mapValues(BiStream::orElseNull).filterValues(Objects::nonNull);
   }
 
+  /**
+   * Returns a {@code BiStream} of pairs whose values are looked up in batches of up to {@code
+   * batchSize} pairs, using {@code batchLookup}, and whose keys are unchanged. Values not found in
+   * the map returned by {@code batchLookup} (or mapped to null) are discarded.
+   *
+   * <p>Useful when each lookup is a remote call. For example, the following code issues one
+   * {@code getStudents()} RPC for every 100 pairs instead of one RPC per pair:
+   *
+   * <pre>{@code
+   * ImmutableSetMultimap<ClassId, Student> roster = BiStream.from(registration)
+   *     .mapValuesIfPresent(100, studentIds -> studentService.getStudents(studentIds))
+   *     .collect(toImmutableSetMultimap());
+   * }</pre>
+   *
+   * <p>Each batch's values are de-duplicated before being passed to {@code batchLookup}. Encounter
+   * order is preserved. If this stream is parallel, batches are looked up concurrently.
+   *
+   * @throws IllegalArgumentException if {@code batchSize <= 0}
+   * @since 5.3
+   */
+  public final <V2> BiStream<K, V2> mapValuesIfPresent(
+      int batchSize,
+      Function<? super List<V>, ? extends Map<? super V, ? extends V2>> batchLookup) {
+    return inverse().<V2>mapKeysIfPresent(batchSize, batchLookup).inverse();
+  }
+
   /**
    * Returns a {@code BiStream} consisting of the pairs of this stream, additionally invoking {@code
    * action} on each pair as pairs are consumed from the resulting stream.
@@ -1266,6 +1524,88 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     return append(of(key, value));
   }
 
+  /**
+   * Returns a {@code BiStream} of the pairs in this stream joined with the pairs in {@code other}
+   * that have equal keys. For every pair {@code (k, v1)} in this stream and every pair
+   * {@code (k, v2)} in {@code other}, the result stream will include {@code (k, joiner(v1, v2))}.
+   * For example:
+   *
+   * <pre>{@code
+   * Map<UserId, Address> addresses = ...;
+   * BiStream.from(orders, Order::userId, identity())
+   *     .join(BiStream.from(addresses), Shipment::new)
+   *     ...;
+   * }</pre>
+   *
+   * <p>Implemented as a hash join. One side is copied into a hash table upon the terminal operation,
+   * and the other side is then streamed through. If the size of both streams is known (for example
+   * streams created from collections or maps), the smaller one is hashed, and the result follows the
+   * encounter order of the larger one; otherwise {@code other} is hashed and the result follows the
+   * encounter order of this stream.
+   *
+   * <p>Keys are compared with {@link Object#equals}. Null keys match null keys.
+   *
+   * <p>For inputs already sorted by key, consider {@link #joinSorted} to avoid the hash table.
+   *
+   * @since 5.3
+   */
+  public final <V2, R> BiStream<K, R> join(
+      BiStream<? extends K, ? extends V2> other,
+      BiFunction<? super V, ? super V2, ? extends R> joiner) {
+    return Joins.hashJoin(this, other, joiner);
+  }
+
+  /**
+   * Similar to {@link #join}, returns a {@code BiStream} of the pairs in this stream joined with
+   * the pairs in {@code other} that have equal keys, except pairs in this stream without a match in
+   * {@code other} are also retained, with {@code joiner} invoked with null as the second argument.
+   *
+   * <p>{@code other} is copied into a hash table upon the terminal operation. The result follows
+   * the encounter order of this stream.
+   *
+   * @since 5.3
+   */
+  public final <V2, R> BiStream<K, R> leftJoin(
+      BiStream<? extends K, ? extends V2> other,
+      BiFunction<? super V, ? super V2, ? extends R> joiner) {
+    return Joins.leftHashJoin(this, other, joiner);
+  }
+
+  /**
+   * Groups the values of this stream and the values of {@code other} by key. For every distinct
+   * key {@code k} present in either stream, the result stream includes
+   * {@code (k, joiner(values1, values2))}, where {@code values1} are the values of {@code k} in
+   * this stream and {@code values2} the values of {@code k} in {@code other}. Either list may be
+   * empty, but not both.
+   *
+   * <p>Keys are in the order they first appear in this stream, followed by the keys only found in
+   * {@code other}. Both streams are buffered in memory upon the terminal operation.
+   *
+   * @since 5.3
+   */
+  public final <V2, R> BiStream<K, R> coGroup(
+      BiStream<? extends K, ? extends V2> other,
+      BiFunction<? super List<V>, ? super List<V2>, ? extends R> joiner) {
+    return Joins.coGroup(this, other, joiner);
+  }
+
+  /**
+   * Same as {@link #join}, but assumes that both this stream and {@code other} are already sorted
+   * by key according to {@code keyOrder}, in which case the two streams are merged lazily without
+   * a hash table. Only the values in {@code other} that share the current key are buffered.
+   *
+   * <p>The result follows the encounter order of this stream. If either stream isn't sorted by
+   * {@code keyOrder}, matching pairs may be missed.
+   *
+   * @since 5.3
+   */
+  public final <V2, R> BiStream<K, R> joinSorted(
+      BiStream<? extends K, ? extends V2> other,
+      Comparator<? super K> keyOrder,
+      BiFunction<? super V, ? super V2, ? extends R> joiner) {
+    return Joins.sortMergeJoin(this, other, keyOrder, joiner);
+  }
+
   /** Returns a {@code Stream} consisting of only the keys from each pair in this stream. */
   public final Stream<K> keys() {
     return mapToObj((k, v) -> k);
@@ -1331,6 +1671,33 @@ public abstract class BiStream<K, V> implements AutoCloseable {
    */
   public abstract BiStream<K, V> skip(int n);
 
+  /**
+   * Dices the pairs of this stream into chunks each with up to {@code maxSize} pairs, such as for
+   * bulk writes. For example:
+   *
+   * <pre>{@code
+   * BiStream.from(pendingWrites)
+   *     .dice(1000)
+   *     .forEach(batch -> store.putAll(batch.stream().toMap()));
+   * }</pre>
+   *
+   * <p>Like {@link MoreStreams#dice(Stream, int)}, a parallel stream is diced in parallel, with
+   * each split diced independently, so there can be more than one chunk smaller than
+   * {@code maxSize}. Each chunk stores its keys and values in columns, with no {@code Map.Entry}
+   * copies.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0}
+   * @since 5.3
+   */
+  public final Stream<BiCollection<K, V>> dice(int maxSize) {
+    return diceChunks(maxSize);
+  }
+
+  /** Dices into chunks. Overridden by index-based streams to dice without creating entries. */
+  Stream<BiCollection<K, V>> diceChunks(int maxSize) {
+    return BiDicer.dice(mapToEntry(), maxSize);
+  }
+
   /**
    * Returns a {@code BiStream} consisting of only the distinct pairs (according to {@code
    * Object.equals(Object)} for both key and value).
@@ -1339,6 +1706,31 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     return fromEntries(mapToEntry().distinct());
   }
 
+  /**
+   * Returns a {@code BiStream} consisting of only the distinct pairs (according to {@code
+   * Object.equals(Object)} for both key and value), for streams with too many pairs to
+   * de-duplicate on the heap.
+   *
+   * <p>All pairs are serialized with {@code keyCodec} and {@code valueCodec} into direct
+   * (off-heap) {@code ByteBuffer}s, then de-duplicated one hash partition of roughly {@code
+   * maxInMemory} pairs at a time. Besides the partition, the heap only holds one bit per input
+   * pair. Like {@link #distinct()}, encounter order is preserved.
+   *
+   * <p>Once the returned stream is fully consumed or closed, the off-heap buffers are recycled for
+   * reuse by subsequent off-heap operations, up to a bounded pool size. Native memory beyond that
+   * is reclaimed when the JVM garbage collects the buffers.
+   *
+   * <p>Null keys and values are allowed. The codecs are never passed null.
+   *
+   * @throws IllegalArgumentException if {@code maxInMemory <= 0}
+   * @throws IllegalStateException if this stream has more than {@code Integer.MAX_VALUE} pairs
+   * @since 5.3
+   */
+  public final BiStream<K, V> distinctOffHeap(
+      int maxInMemory, Codec<K> keyCodec, Codec<V> valueCodec) {
+    return SpillingDistinct.distinct(this, maxInMemory, keyCodec, valueCodec);
+  }
+
   /**
    * Returns a {@code BiStream} consisting of the pairs in this stream, in the order produced by
    * applying {@code keyComparator} on the keys of each pair, and then for equal keys,
@@ -1394,6 +1786,104 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     return fromEntries(mapToEntry().sorted(ordering.asComparator(Map.Entry::getKey, Map.Entry::getValue)));
   }
 
+  /**
+   * Returns a {@code BiStream} consisting of the pairs in this stream, in the order produced by
+   * applying {@code comparator} on the keys of each pair, using no more than roughly
+   * {@code maxInMemory} pairs worth of heap.
+   *
+   * <p>See {@link #sorted(BiComparator, int, Codec, Codec)} for details.
+   *
+   * @throws IllegalArgumentException if {@code maxInMemory <= 0}
+   * @since 5.3
+   */
+  public final BiStream<K, V> sortedByKeys(
+      Comparator<? super K> comparator, int maxInMemory, Codec<K> keyCodec, Codec<V> valueCodec) {
+    requireNonNull(comparator);
+    return sorted(comparingKey(comparator), maxInMemory, keyCodec, valueCodec);
+  }
+
+  /**
+   * Returns a {@code BiStream} consisting of the pairs in this stream, in the order produced by
+   * applying {@code comparator} on the values of each pair, using no more than roughly
+   * {@code maxInMemory} pairs worth of heap.
+   *
+   * <p>See {@link #sorted(BiComparator, int, Codec, Codec)} for details.
+   *
+   * @throws IllegalArgumentException if {@code maxInMemory <= 0}
+   * @since 5.3
+   */
+  public final BiStream<K, V> sortedByValues(
+      Comparator<? super V> comparator, int maxInMemory, Codec<K> keyCodec, Codec<V> valueCodec) {
+    requireNonNull(comparator);
+    return sorted(comparingValue(comparator), maxInMemory, keyCodec, valueCodec);
+  }
+
+  /**
+   * Returns a {@code BiStream} consisting of the pairs in this stream, in the order produced by
+   * applying {@code ordering} BiComparator between each pair, for streams too large to be sorted
+   * in memory.
+   *
+   * <p>Pairs are buffered up to {@code maxInMemory} at a time. Each time the buffer fills up, it's
+   * sorted and spilled to a temp file using {@code keyCodec} and {@code valueCodec}. The sorted
+   * files are then lazily merged as the returned stream is consumed, with only one pair per file
+   * held in memory. If this stream has no more than {@code maxInMemory} pairs, nothing is written
+   * to disk.
+   *
+   * <p>The temp files are deleted once the returned stream is fully consumed or closed. Use
+   * try-with-resources if the stream may not be fully consumed:
+   *
+   * <pre>{@code
+   * try (BiStream<String, Long> sorted =
+   *     BiStream.from(wordCounts)
+   *         .sorted(comparingValue(reverseOrder()), 1_000_000, Codec.strings(), Codec.longs())) {
+   *   return sorted.limit(100).toMap();
+   * }
+   * }</pre>
+   *
+   * <p>Null keys and values are allowed. The codecs are never passed null.
+   *
+   * @throws IllegalArgumentException if {@code maxInMemory <= 0}
+   * @throws java.io.UncheckedIOException if reading or writing the temp files failed
+   * @since 5.3
+   */
+  public final BiStream<K, V> sorted(
+      BiComparator<? super K, ? super V> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec) {
+    return SpillingSorter.sort(
+        this,
+        ordering.asComparator(Map.Entry<K, V>::getKey, Map.Entry<K, V>::getValue),
+        maxInMemory,
+        keyCodec,
+        valueCodec);
+  }
+
+  /**
+   * Same as {@link #sorted(BiComparator, int, Codec, Codec)}, except the sorted runs are spilled to
+   * direct (off-heap) {@code ByteBuffer}s instead of temp files. Use it to keep large sorts from
+   * putting pressure on the garbage collector when there is enough memory outside of the heap.
+   *
+   * <p>Once the returned stream is fully consumed or closed, the off-heap buffers are recycled for
+   * reuse by subsequent off-heap operations, up to a bounded pool size. Native memory beyond that
+   * is reclaimed when the JVM garbage collects the buffers.
+   *
+   * @throws IllegalArgumentException if {@code maxInMemory <= 0}
+   * @since 5.3
+   */
+  public final BiStream<K, V> sortedOffHeap(
+      BiComparator<? super K, ? super V> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec) {
+    return SpillingSorter.sortOffHeap(
+        this,
+        ordering.asComparator(Map.Entry<K, V>::getKey, Map.Entry<K, V>::getValue),
+        maxInMemory,
+        keyCodec,
+        valueCodec);
+  }
+
   /** Returns the count of pairs in this stream. */
   public final long count() {
     return keys().count();
@@ -1409,7 +1899,34 @@ public abstract class BiStream<K, V> implements AutoCloseable {
    * {@code collect(Collectors::toMap)} or {@code collect(BiCollectors.toMap())}.
    */
   public final Map<K, V> toMap() {
-    return collect(BiCollectors.toMap());
+    return collectToMap();
+  }
+
+  /**
+   * Collects into a {@code HashMap} with the same semantics as {@code Collectors.toMap()}.
+   * Overridden by sequential sources to presize the map and put the pairs directly.
+   */
+  Map<K, V> collectToMap() {
+    return collect(Collectors::toMap);
+  }
+
+  /**
+   * Returns a {@code HashMap} presized for {@code estimatedSize} entries. If the size isn't
+   * exact (such as after {@link #filter}), it's an upper bound, so the presizing is capped
+   * to avoid over-allocating for a heavily filtered stream.
+   */
+  static <K, V> Map<K, V> newHashMap(long estimatedSize, boolean exact) {
+    long expected = exact ? estimatedSize : Math.min(estimatedSize, MAX_PRESIZE_FOR_ESTIMATE);
+    return new HashMap<>((int) Math.min(expected * 4 / 3 + 1, 1 << 30));
+  }
+
+  /** Puts {@code key} and {@code value} into {@code map} with the rules of Collectors.toMap(). */
+  static <K, V> void putUnique(Map<K, V> map, K key, V value) {
+    V existing = map.putIfAbsent(key, requireNonNull(value));
+    if (existing != null) {
+      throw new IllegalStateException(
+          "Duplicate key " + key + " (attempted merging values " + existing + " and " + value + ")");
+    }
   }
 
   /**
@@ -1569,10 +2086,25 @@ public abstract class BiStream<K, V> implements AutoCloseable {
       return from(underlying.skip(n), toKey, toValue);
     }
 
+    @SuppressWarnings("unchecked") // BiCollectors.TO_MAP always collects to Map<K, V>
     @Override public final <R> R collect(BiCollector<? super K, ? super V, R> collector) {
+      if (collector == BiCollectors.TO_MAP) {
+        return (R) collectToMap();
+      }
       return underlying.collect(collector.splitting(toKey::apply, toValue::apply));
     }
 
+    @Override final Map<K, V> collectToMap() {
+      if (underlying.isParallel()) {
+        return super.collectToMap();
+      }
+      Spliterator<E> entries = underlying.spliterator();
+      Map<K, V> map = newHashMap(
+          entries.estimateSize(), entries.hasCharacteristics(Spliterator.SIZED));
+      entries.forEachRemaining(e -> putUnique(map, toKey.apply(e), toValue.apply(e)));
+      return map;
+    }
+
     @Override public final <A> A collect(A container, BiAccumulator<? super A, ? super K, ? super V> accumulator) {
       requireNonNull(accumulator);
       underlying
@@ -1591,6 +2123,160 @@ public abstract class BiStream<K, V> implements AutoCloseable {
     }
   }
 
+  /**
+   * An implementation over a stream of int indexes, with {@code toKey} and {@code toValue}
+   * looking up the key and value at each index, typically from random-access columns.
+   *
+   * <p>Splitting and sizing are delegated to the index stream, so for example
+   * {@code IntStream.range()} results in a {@code SIZED}, evenly splittable stream.
+   */
+  private static final class IndexedStream<K, V> extends BiStream<K, V> {
+    private final IntStream indexes;
+    private final IntFunction<? extends K> toKey;
+    private final IntFunction<? extends V> toValue;
+
+    IndexedStream(
+        IntStream indexes, IntFunction<? extends K> toKey, IntFunction<? extends V> toValue) {
+      this.indexes = requireNonNull(indexes);
+      this.toKey = requireNonNull(toKey);
+      this.toValue = requireNonNull(toValue);
+    }
+
+    @Override public <T> Stream<T> mapToObj(BiFunction<? super K, ? super V, ? extends T> mapper) {
+      requireNonNull(mapper);
+      return indexes.mapToObj(i -> mapper.apply(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public DoubleStream mapToDouble(ToDoubleBiFunction<? super K, ? super V> mapper) {
+      requireNonNull(mapper);
+      return indexes.mapToDouble(i -> mapper.applyAsDouble(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public IntStream mapToInt(ToIntBiFunction<? super K, ? super V> mapper) {
+      requireNonNull(mapper);
+      return indexes.map(i -> mapper.applyAsInt(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public LongStream mapToLong(ToLongBiFunction<? super K, ? super V> mapper) {
+      requireNonNull(mapper);
+      return indexes.mapToLong(i -> mapper.applyAsLong(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public <K2> BiStream<K2, V> mapKeys(Function<? super K, ? extends K2> keyMapper) {
+      requireNonNull(keyMapper);
+      return indexed(indexes, i -> keyMapper.apply(toKey.apply(i)), toValue);
+    }
+
+    @Override public <V2> BiStream<K, V2> mapValues(Function<? super V, ? extends V2> valueMapper) {
+      requireNonNull(valueMapper);
+      return indexed(indexes, toKey, i -> valueMapper.apply(toValue.apply(i)));
+    }
+
+    @Override public BiStream<V, K> inverse() {
+      return indexed(indexes, toValue, toKey);
+    }
+
+    @Override public void forEach(BiConsumer<? super K, ? super V> action) {
+      requireNonNull(action);
+      indexes.forEach(i -> action.accept(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public void forEachOrdered(BiConsumer<? super K, ? super V> action) {
+      requireNonNull(action);
+      indexes.forEachOrdered(i -> action.accept(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public boolean allMatch(BiPredicate<? super K, ? super V> predicate) {
+      requireNonNull(predicate);
+      return indexes.allMatch(i -> predicate.test(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public boolean anyMatch(BiPredicate<? super K, ? super V> predicate) {
+      requireNonNull(predicate);
+      return indexes.anyMatch(i -> predicate.test(toKey.apply(i), toValue.apply(i)));
+    }
+
+    @Override public BiStream<K, V> limit(int maxSize) {
+      return indexed(indexes.limit(maxSize), toKey, toValue);
+    }
+
+    @Override Stream<BiCollection<K, V>> diceChunks(int maxSize) {
+      return BiDicer.dice(indexes, toKey, toValue, maxSize);
+    }
+
+    @Override public BiStream<K, V> skip(int n) {
+      return indexed(indexes.skip(n), toKey, toValue);
+    }
+
+    @SuppressWarnings("unchecked") // BiCollectors.TO_MAP always collects to Map<K, V>
+    @Override public <R> R collect(BiCollector<? super K, ? super V, R> collector) {
+      if (collector == BiCollectors.TO_MAP) {
+        return (R) collectToMap();
+      }
+      return collectIndexes(
+          collector.<IndexCursor>splitting(
+              cursor -> toKey.apply(cursor.index), cursor -> toValue.apply(cursor.index)));
+    }
+
+    /**
+     * Collects without boxing the indexes: each accumulation container is paired with a cursor
+     * that's repositioned at every index. {@link BiCollector#splitting} allows input entries to be
+     * ephemeral, so the same cursor is passed to the accumulator over and over.
+     */
+    @SuppressWarnings("unchecked") // With IDENTITY_FINISH, A is R.
+    private <A, R> R collectIndexes(Collector<IndexCursor, A, R> collector) {
+      Supplier<A> supplier = collector.supplier();
+      BiConsumer<A, IndexCursor> accumulator = collector.accumulator();
+      BinaryOperator<A> combiner = collector.combiner();
+      Accumulation<A> result = indexes.collect(
+          () -> new Accumulation<>(supplier.get()),
+          (accumulation, i) -> {
+            accumulation.index = i;
+            accumulator.accept(accumulation.container, accumulation);
+          },
+          (a1, a2) -> a1.container = combiner.apply(a1.container, a2.container));
+      return collector.characteristics().contains(Characteristics.IDENTITY_FINISH)
+          ? (R) result.container
+          : collector.finisher().apply(result.container);
+    }
+
+    @Override Map<K, V> collectToMap() {
+      if (indexes.isParallel()) {
+        return super.collectToMap();
+      }
+      Spliterator.OfInt it = indexes.spliterator();
+      Map<K, V> map = newHashMap(it.estimateSize(), it.hasCharacteristics(Spliterator.SIZED));
+      it.forEachRemaining((int i) -> putUnique(map, toKey.apply(i), toValue.apply(i)));
+      return map;
+    }
+
+    @Override public <A> A collect(
+        A container, BiAccumulator<? super A, ? super K, ? super V> accumulator) {
+      requireNonNull(accumulator);
+      indexes
+          .sequential()
+          .forEachOrdered(i -> accumulator.accumulate(container, toKey.apply(i), toValue.apply(i)));
+      return container;
+    }
+
+    @Override public void close() {
+      indexes.close();
+    }
+
+    /** The current index of an accumulation. */
+    private static class IndexCursor {
+      int index;
+    }
+
+    private static final class Accumulation<A> extends IndexCursor {
+      A container;
+
+      Accumulation(A container) {
+        this.container = container;
+      }
+    }
+  }
+
   private static final class ZippingStream<K, V> extends BiStream<K, V> {
     private final Stream<K> left;
     private final Stream<V> right;
@@ -0,0 +1,102 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes objects of type {@code T} to, and decodes them from, a compact binary form.
+ *
+ * <p>Used by stream operations that need to move elements out of the Java heap (for example
+ * {@link BiStream#sorted(com.google.mu.function.BiComparator, int, Codec, Codec)}). Nulls are
+ * handled by the caller, so implementations never see null.
+ *
+ * <p>For example, to spill a {@code BiStream<String, Long>} to disk:
+ *
+ * <pre>{@code
+ * BiStream.from(wordCounts)
+ *     .sortedByKeys(naturalOrder(), 1_000_000, Codec.strings(), Codec.longs())
+ *     ...;
+ * }</pre>
+ *
+ * @since 5.3
+ */
+public interface Codec<T> {
+  /** Writes {@code value} to {@code out}. */
+  void encode(T value, DataOutput out) throws IOException;
+
+  /** Reads back a value previously written by {@link #encode}. */
+  T decode(DataInput in) throws IOException;
+
+  /** Returns a {@code Codec} for strings, encoded as length-prefixed UTF-8 bytes. */
+  static Codec<String> strings() {
+    return new Codec<String>() {
+      @Override public void encode(String value, DataOutput out) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      @Override public String decode(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+      }
+    };
+  }
+
+  /** Returns a {@code Codec} for {@code Integer}. */
+  static Codec<Integer> ints() {
+    return new Codec<Integer>() {
+      @Override public void encode(Integer value, DataOutput out) throws IOException {
+        out.writeInt(value);
+      }
+
+      @Override public Integer decode(DataInput in) throws IOException {
+        return in.readInt();
+      }
+    };
+  }
+
+  /** Returns a {@code Codec} for {@code Long}. */
+  static Codec<Long> longs() {
+    return new Codec<Long>() {
+      @Override public void encode(Long value, DataOutput out) throws IOException {
+        out.writeLong(value);
+      }
+
+      @Override public Long decode(DataInput in) throws IOException {
+        return in.readLong();
+      }
+    };
+  }
+
+  /** Returns a {@code Codec} for {@code Double}. */
+  static Codec<Double> doubles() {
+    return new Codec<Double>() {
+      @Override public void encode(Double value, DataOutput out) throws IOException {
+        out.writeDouble(value);
+      }
+
+      @Override public Double decode(DataInput in) throws IOException {
+        return in.readDouble();
+      }
+    };
+  }
+}
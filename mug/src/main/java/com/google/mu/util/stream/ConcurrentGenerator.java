@@ -0,0 +1,184 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.mu.util.stream.Handoff.Failure;
+
+/**
+ * Implements {@link MoreStreams#generateConcurrently} and {@link Iteration#iterateConcurrently}.
+ * Every task of type {@code S} is expanded by its own {@link CountedCompleter}, so that idle
+ * workers of the pool can steal the subtasks, while the emitted elements of type {@code T} are
+ * handed over to the consuming thread through a queue.
+ */
+final class ConcurrentGenerator<S, T> implements Spliterator<T> {
+  private static final Object END = new Object();
+
+  private final S seed;
+  private final Expander<S, T> expander;
+  private final ForkJoinPool pool;
+  private final BlockingQueue<Object> generated = new LinkedBlockingQueue<>();
+  private volatile boolean cancelled;
+  private boolean started;
+  private boolean finished;
+
+  private ConcurrentGenerator(S seed, Expander<S, T> expander, ForkJoinPool pool) {
+    this.seed = requireNonNull(seed);
+    this.expander = requireNonNull(expander);
+    this.pool = requireNonNull(pool);
+  }
+
+  static <T> Stream<T> generate(
+      T seed, Function<? super T, ? extends Stream<? extends T>> step, ForkJoinPool pool) {
+    requireNonNull(step);
+    return expand(seed, (T element, Sink<T, T> sink) -> {
+      sink.emit(element);
+      Stream<? extends T> fanout = step.apply(element);
+      if (fanout != null) {
+        fanout.forEach(sink::fork);
+      }
+    }, pool);
+  }
+
+  /**
+   * Returns the elements emitted by expanding {@code seed} and, transitively, all the subtasks
+   * forked during expansion, each in its own fork-join task on {@code pool}.
+   */
+  static <S, T> Stream<T> expand(S seed, Expander<S, T> expander, ForkJoinPool pool) {
+    ConcurrentGenerator<S, T> generator = new ConcurrentGenerator<>(seed, expander, pool);
+    return StreamSupport.stream(generator, false).onClose(generator::cancel);
+  }
+
+  @Override public boolean tryAdvance(Consumer<? super T> action) {
+    requireNonNull(action);
+    if (finished) {
+      return false;
+    }
+    if (!started) {
+      started = true;
+      pool.execute(new Expansion(null, seed));
+    }
+    Object next;
+    try {
+      next = generated.take();
+    } catch (InterruptedException e) {
+      cancel();
+      throw Handoff.interrupted(e, "generated element");
+    }
+    if (next == END) {
+      finished = true;
+      return false;
+    }
+    if (next instanceof Failure) {
+      finished = true;
+      throw ((Failure) next).propagate();
+    }
+    @SuppressWarnings("unchecked") // Only T and the private markers are ever enqueued.
+    T element = (T) next;
+    action.accept(element);
+    return true;
+  }
+
+  @Override public Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override public int characteristics() {
+    return Spliterator.NONNULL;
+  }
+
+  private void cancel() {
+    cancelled = true;
+    finished = true;
+    generated.clear();
+  }
+
+  /** Expands a task into elements and subtasks. */
+  interface Expander<S, T> {
+    /** Expands {@code task}, passing the elements and subtasks to {@code sink} as they come. */
+    void expand(S task, Sink<S, T> sink);
+  }
+
+  /** Receives the expansion of a task. Only valid while the task is being expanded. */
+  interface Sink<S, T> {
+    /** Hands {@code element} over to the consuming thread. */
+    void emit(T element);
+
+    /** Forks a fork-join task to expand {@code task}. */
+    void fork(S task);
+  }
+
+  /** Expands {@code task}, emitting elements as they come and forking one task per subtask. */
+  @SuppressWarnings("serial")
+  private final class Expansion extends CountedCompleter<Void> implements Sink<S, T> {
+    private final S task;
+
+    Expansion(Expansion parent, S task) {
+      super(parent);
+      this.task = task;
+    }
+
+    @Override public void compute() {
+      if (!cancelled) {
+        expander.expand(task, this);
+      }
+      tryComplete();
+    }
+
+    @Override public void emit(T element) {
+      if (!cancelled) {
+        generated.add(element);
+      }
+    }
+
+    @Override public void fork(S child) {
+      requireNonNull(child);
+      if (!cancelled) {
+        addToPendingCount(1);
+        new Expansion(this, child).fork();
+      }
+    }
+
+    @Override public void onCompletion(CountedCompleter<?> caller) {
+      if (getCompleter() == null && !cancelled) {
+        generated.add(END);
+      }
+    }
+
+    @Override public boolean onExceptionalCompletion(
+        Throwable exception, CountedCompleter<?> caller) {
+      if (getCompleter() == null && !cancelled) {
+        cancelled = true;  // Stop the outstanding expansions.
+        generated.add(new Failure(exception));
+      }
+      return true;
+    }
+  }
+}
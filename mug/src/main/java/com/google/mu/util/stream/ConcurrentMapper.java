@@ -0,0 +1,190 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Implements {@link MoreStreams#mapConcurrently} and {@link MoreStreams#mapConcurrentlyUnordered}.
+ * The upstream is pulled lazily in the consuming thread, with at most {@code maxConcurrency}
+ * mapping tasks outstanding at any time.
+ */
+abstract class ConcurrentMapper<F, T> implements Spliterator<T>, Consumer<F> {
+  private final Stream<F> stream;
+  private final int maxConcurrency;
+  private final Executor executor;
+  final Function<? super F, ? extends T> mapper;
+  /** Tasks submitted but not yet delivered to the consumer, in submission order. */
+  final Deque<Future<T>> inFlight = new ArrayDeque<>();
+  private Spliterator<F> upstream;
+  private boolean upstreamExhausted;
+
+  private ConcurrentMapper(
+      Stream<F> stream,
+      int maxConcurrency,
+      Executor executor,
+      Function<? super F, ? extends T> mapper) {
+    this.stream = requireNonNull(stream);
+    this.executor = requireNonNull(executor);
+    this.mapper = requireNonNull(mapper);
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException("maxConcurrency (" + maxConcurrency + ") must be positive");
+    }
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  static <F, T> Stream<T> inOrder(
+      Stream<F> stream,
+      int maxConcurrency,
+      Executor executor,
+      Function<? super F, ? extends T> mapper) {
+    return new InOrder<F, T>(stream, maxConcurrency, executor, mapper).toStream();
+  }
+
+  static <F, T> Stream<T> inCompletionOrder(
+      Stream<F> stream,
+      int maxConcurrency,
+      Executor executor,
+      Function<? super F, ? extends T> mapper) {
+    return new InCompletionOrder<F, T>(stream, maxConcurrency, executor, mapper).toStream();
+  }
+
+  /** Returns a new task to map {@code element}. */
+  abstract FutureTask<T> newTask(F element);
+
+  /**
+   * Returns the next task to be delivered, blocking if needed. The task stays in {@link #inFlight}
+   * until its result is delivered, so that it's cancelled if the consumer gives up on it.
+   */
+  abstract Future<T> nextCompleted() throws InterruptedException;
+
+  @Override public final boolean tryAdvance(Consumer<? super T> action) {
+    requireNonNull(action);
+    if (upstream == null) {
+      upstream = stream.spliterator();
+    }
+    while (!upstreamExhausted && inFlight.size() < maxConcurrency) {
+      upstreamExhausted = !upstream.tryAdvance(this);
+    }
+    if (inFlight.isEmpty()) {
+      return false;
+    }
+    T result;
+    try {
+      Future<T> next = nextCompleted();
+      result = next.get();
+      inFlight.remove(next);
+    } catch (InterruptedException e) {
+      cancel();
+      throw Handoff.interrupted(e, "mapped element");
+    } catch (ExecutionException e) {
+      cancel();
+      throw Handoff.propagate(e.getCause());
+    }
+    action.accept(result);
+    return true;
+  }
+
+  /** Submits the mapping of {@code element}. */
+  @Override public final void accept(F element) {
+    FutureTask<T> task = newTask(element);
+    executor.execute(task);  // If rejected, don't leave behind a task that will never run.
+    inFlight.addLast(task);
+  }
+
+  @Override public final Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override public final long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  final Stream<T> toStream() {
+    return StreamSupport.stream(this, false).onClose(this::cancel).onClose(stream::close);
+  }
+
+  private void cancel() {
+    upstreamExhausted = true;
+    for (Future<T> task : inFlight) {
+      task.cancel(true);
+    }
+    inFlight.clear();
+  }
+
+  private static final class InOrder<F, T> extends ConcurrentMapper<F, T> {
+    InOrder(
+        Stream<F> stream,
+        int maxConcurrency,
+        Executor executor,
+        Function<? super F, ? extends T> mapper) {
+      super(stream, maxConcurrency, executor, mapper);
+    }
+
+    @Override FutureTask<T> newTask(F element) {
+      return new FutureTask<>(() -> mapper.apply(element));
+    }
+
+    @Override Future<T> nextCompleted() {
+      return inFlight.getFirst();
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.ORDERED;
+    }
+  }
+
+  private static final class InCompletionOrder<F, T> extends ConcurrentMapper<F, T> {
+    private final BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+
+    InCompletionOrder(
+        Stream<F> stream,
+        int maxConcurrency,
+        Executor executor,
+        Function<? super F, ? extends T> mapper) {
+      super(stream, maxConcurrency, executor, mapper);
+    }
+
+    @Override FutureTask<T> newTask(F element) {
+      return new FutureTask<T>(() -> mapper.apply(element)) {
+        @Override protected void done() {
+          completed.add(this);
+        }
+      };
+    }
+
+    @Override Future<T> nextCompleted() throws InterruptedException {
+      return completed.take();
+    }
+
+    @Override public int characteristics() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.BiStream.kv;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Accumulates the consecutive runs of a chunk of elements. Chunks of a parallel stream are combined
+ * by stitching the last run of the left chunk with the first run of the right chunk if they share
+ * the same key, using the run summarizer's own combiner.
+ *
+ * <p>Since only the first and the last run of a chunk can be stitched, every run in between is
+ * finished as soon as the next run starts, and only its result is retained.
+ */
+final class ConsecutiveRuns<T, K, A, R> {
+  private final Function<A, R> finisher;
+  private final List<Map.Entry<K, R>> finished = new ArrayList<>();
+  private int runCount;
+  private K firstKey;
+  private A first;
+  // Same as first if there's only one run.
+  private K lastKey;
+  private A last;
+
+  private ConsecutiveRuns(Function<A, R> finisher) {
+    this.finisher = finisher;
+  }
+
+  /**
+   * Returns a {@code Collector} that collects the consecutive runs of the input elements, keyed by
+   * {@code by} and each summarized by {@code runSummarizer}, into a list of pairs.
+   */
+  static <T, K, A, R> Collector<T, ?, List<Map.Entry<K, R>>> collecting(
+      Function<? super T, ? extends K> by, Collector<? super T, A, R> runSummarizer) {
+    requireNonNull(by);
+    Supplier<A> newRun = runSummarizer.supplier();
+    BiConsumer<A, ? super T> accumulator = runSummarizer.accumulator();
+    BinaryOperator<A> combiner = runSummarizer.combiner();
+    Function<A, R> finisher = runSummarizer.finisher();
+    return Collector.of(
+        () -> new ConsecutiveRuns<T, K, A, R>(finisher),
+        (runs, element) -> runs.add(by.apply(element), element, newRun, accumulator),
+        (left, right) -> left.stitch(right, combiner),
+        ConsecutiveRuns::finish);
+  }
+
+  private void add(K key, T element, Supplier<A> newRun, BiConsumer<A, ? super T> accumulator) {
+    if (runCount == 0 || !Objects.equals(lastKey, key)) {
+      A run = requireNonNull(newRun.get());
+      if (runCount == 0) {
+        firstKey = key;
+        first = run;
+      } else if (runCount > 1) {
+        close(lastKey, last);
+      }
+      lastKey = key;
+      last = run;
+      runCount++;
+    }
+    accumulator.accept(last, element);
+  }
+
+  private ConsecutiveRuns<T, K, A, R> stitch(
+      ConsecutiveRuns<T, K, A, R> that, BinaryOperator<A> combiner) {
+    if (that.runCount == 0) {
+      return this;
+    }
+    if (runCount == 0) {
+      return that;
+    }
+    K key = that.firstKey;
+    A run = that.first;
+    if (Objects.equals(lastKey, key)) {
+      // The run straddles the chunk boundary and replaces our last run.
+      run = combiner.apply(last, run);
+      if (runCount == 1) {
+        first = run;
+      }
+      runCount--;
+    } else if (runCount > 1) {
+      close(lastKey, last);
+    }
+    if (that.runCount == 1) {
+      lastKey = key;
+      last = run;
+    } else {
+      if (runCount > 0) {
+        close(key, run);
+      }
+      finished.addAll(that.finished);
+      lastKey = that.lastKey;
+      last = that.last;
+    }
+    runCount += that.runCount;
+    return this;
+  }
+
+  private List<Map.Entry<K, R>> finish() {
+    List<Map.Entry<K, R>> result = new ArrayList<>(runCount);
+    if (runCount > 0) {
+      result.add(kv(firstKey, finisher.apply(first)));
+      result.addAll(finished);
+    }
+    if (runCount > 1) {
+      result.add(kv(lastKey, finisher.apply(last)));
+    }
+    return result;
+  }
+
+  /** Finishes a run that can no longer be stitched. */
+  private void close(K key, A run) {
+    finished.add(kv(key, finisher.apply(run)));
+  }
+}
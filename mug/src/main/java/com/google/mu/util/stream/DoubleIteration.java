@@ -0,0 +1,130 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import com.google.mu.util.stream.Iteration.Continuation;
+
+/**
+ * Similar to {@link Iteration}, but is used to iteratively {@link #yield yield()} {@code double}
+ * values into a lazy {@link DoubleStream}, without boxing. For example:
+ *
+ * <pre>{@code
+ * class Bisection extends DoubleIteration {
+ *   Bisection approximate(double low, double high, DoublePredicate tooHigh) {
+ *     if (high - low < 1e-9) return this;
+ *     double mid = (low + high) / 2;
+ *     yield(mid);
+ *     if (tooHigh.test(mid)) {
+ *       yield(() -> approximate(low, mid, tooHigh));
+ *     } else {
+ *       yield(() -> approximate(mid, high, tooHigh));
+ *     }
+ *     return this;
+ *   }
+ * }
+ * DoubleStream sqrt2 = new Bisection().approximate(1, 2, x -> x * x > 2).iterate();
+ * }</pre>
+ *
+ * <p>Values are kept on a primitive array stack alongside the pending {@link Continuation}s,
+ * so no per-value allocation is incurred.
+ *
+ * <p>This class is not threadsafe.
+ *
+ * @since 5.3
+ */
+public class DoubleIteration extends IterationStack {
+  // The yielded values, parallel to the continuations of the IterationStack.
+  private double[] values = new double[INITIAL_CAPACITY];
+
+  /** Yields {@code value} to the result stream. */
+  public final DoubleIteration yield(double value) {
+    int index = pushValue();
+    values[index] = value;
+    return this;
+  }
+
+  /**
+   * Yields to the result stream a recursive iteration or lazy side-effect wrapped in {@code
+   * continuation}.
+   */
+  public final DoubleIteration yield(Continuation continuation) {
+    pushContinuation(continuation);
+    return this;
+  }
+
+  /**
+   * Yields to the result stream the result of {@code computation}. Upon evaluation, also passes
+   * the computation result to {@code consumer}. Useful when the computation result of a recursive
+   * call is needed, as in {@link Iteration#yield(Supplier, Consumer) Iteration.yield()}.
+   */
+  public final DoubleIteration yield(DoubleSupplier computation, DoubleConsumer consumer) {
+    requireNonNull(computation);
+    requireNonNull(consumer);
+    return yield(() -> {
+      double result = computation.getAsDouble();
+      consumer.accept(result);
+      yield(result);
+    });
+  }
+
+  /**
+   * Starts iteration over the {@link #yield yielded} values.
+   *
+   * <p>Because a {@code DoubleIteration} instance is stateful and mutable, {@code iterate()} can be
+   * called at most once per instance.
+   *
+   * @throws IllegalStateException if {@code iterate()} has already been called.
+   */
+  public final DoubleStream iterate() {
+    start();
+    return StreamSupport.doubleStream(
+        new Spliterators.AbstractDoubleSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+          @Override public boolean tryAdvance(DoubleConsumer action) {
+            requireNonNull(action);
+            return next(action);
+          }
+        },
+        false);
+  }
+
+  private boolean next(DoubleConsumer action) {
+    int top = popValue();
+    if (top < 0) return false;
+    action.accept(values[top]);
+    return true;
+  }
+
+  @Override final void resizeValues(int capacity) {
+    values = Arrays.copyOf(values, capacity);
+  }
+
+  @Override final void swapValues(int i, int j) {
+    double value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+}
@@ -0,0 +1,65 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Shared by the streams that hand elements over from background threads to the consuming thread,
+ * such as {@link Prefetcher}, {@link ConcurrentMapper} and {@link ConcurrentGenerator}.
+ */
+final class Handoff {
+  /**
+   * Returns the exception to throw when the consuming thread is interrupted while waiting for
+   * {@code element} (for example "prefetched element"). The interrupt status is restored.
+   */
+  static CancellationException interrupted(InterruptedException e, String element) {
+    Thread.currentThread().interrupt();
+    CancellationException cancellation =
+        new CancellationException("Interrupted while waiting for " + element);
+    cancellation.initCause(e);
+    return cancellation;
+  }
+
+  /**
+   * Rethrows {@code exception} thrown by a background thread if it's unchecked. Otherwise returns
+   * it wrapped in {@link IllegalStateException} for the caller to throw.
+   */
+  static RuntimeException propagate(Throwable exception) {
+    if (exception instanceof RuntimeException) {
+      throw (RuntimeException) exception;
+    }
+    if (exception instanceof Error) {
+      throw (Error) exception;
+    }
+    // Checked exceptions can only be sneaky-thrown by user code.
+    return new IllegalStateException(exception);
+  }
+
+  /** Marks a failure of the background thread, queued in place of the next element. */
+  static final class Failure {
+    private final Throwable exception;
+
+    Failure(Throwable exception) {
+      this.exception = exception;
+    }
+
+    RuntimeException propagate() {
+      return Handoff.propagate(exception);
+    }
+  }
+
+  private Handoff() {}
+}
@@ -0,0 +1,79 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import java.util.Objects;
+
+/**
+ * HyperLogLog cardinality estimator (Flajolet et al.) with {@code 2^14} one-byte registers, for a
+ * standard error of about 0.8% in 16KB of memory regardless of the input size.
+ */
+final class HyperLogLog {
+  private static final int PRECISION = 14;
+  private static final int REGISTERS = 1 << PRECISION;
+
+  private final byte[] registers = new byte[REGISTERS];
+
+  /** Adds the pair of {@code key} and {@code value}, both of which can be null. */
+  void add(Object key, Object value) {
+    add(mix(((long) Objects.hashCode(key) << 32) | (Objects.hashCode(value) & 0xFFFFFFFFL)));
+  }
+
+  void add(long hash) {
+    int index = (int) (hash >>> (64 - PRECISION));
+    // The sentinel bit caps the rank in case all remaining bits are zeros.
+    int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+    if (rank > registers[index]) {
+      registers[index] = (byte) rank;
+    }
+  }
+
+  HyperLogLog merge(HyperLogLog that) {
+    for (int i = 0; i < REGISTERS; i++) {
+      if (that.registers[i] > registers[i]) {
+        registers[i] = that.registers[i];
+      }
+    }
+    return this;
+  }
+
+  long estimate() {
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+    double estimate = alpha * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+      // Linear counting is more accurate for small cardinalities.
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /** The 64-bit finalizer of MurmurHash3, which is a bijection. */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -17,9 +17,8 @@ package com.google.mu.util.stream;
 import static com.google.mu.util.stream.MoreStreams.whileNotNull;
 import static java.util.Objects.requireNonNull;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -180,17 +179,33 @@ import java.util.stream.Stream;
  *
  * @since 4.4
  */
-public class Iteration<T> {
-  private final Deque<Object> stack = new ArrayDeque<>();
-  private final Deque<Object> stackFrame = new ArrayDeque<>(8);
-  private final AtomicBoolean started = new AtomicBoolean();
+public class Iteration<T> extends IterationStack {
+  // The yielded elements, parallel to the continuations of the IterationStack.
+  private Object[] elements = new Object[INITIAL_CAPACITY];
+  private Class<?> lastElementClass;
+  // Set once iterateConcurrently() starts. Receives what each running continuation yields.
+  private ThreadLocal<ConcurrentGenerator.Sink<Continuation, T>> concurrentSink;
 
   /** Yields {@code element} to the result stream. */
   public final Iteration<T> yield(T element) {
-    if (element instanceof Continuation) {
-      throw new IllegalArgumentException("Do not stream Continuation objects");
+    if (concurrentSink != null) {
+      // Continuations run on different workers, so don't share lastElementClass among them.
+      if (requireNonNull(element) instanceof Continuation) {
+        throw new IllegalArgumentException("Do not stream Continuation objects");
+      }
+      currentSink().emit(element);
+      return this;
+    }
+    // A failed instanceof check against an interface is slow, so only check new element classes.
+    Class<?> elementClass = element.getClass();
+    if (elementClass != lastElementClass) {
+      if (element instanceof Continuation) {
+        throw new IllegalArgumentException("Do not stream Continuation objects");
+      }
+      lastElementClass = elementClass;
     }
-    stackFrame.push(element);
+    int index = pushValue();
+    elements[index] = element;
     return this;
   }
 
@@ -199,7 +214,12 @@ public class Iteration<T> {
    * wrapped in {@code continuation}.
    */
   public final Iteration<T> yield(Continuation continuation) {
-    stackFrame.push(continuation);
+    requireNonNull(continuation);
+    if (concurrentSink != null) {
+      currentSink().fork(continuation);
+      return this;
+    }
+    pushContinuation(continuation);
     return this;
   }
 
@@ -261,12 +281,77 @@ public class Iteration<T> {
    * @since 4.5
    */
   public final Stream<T> iterate() {
-    if (started.getAndSet(true)) {
-      throw new IllegalStateException("Iteration already started.");
-    }
+    start();
     return whileNotNull(this::next);
   }
 
+  /**
+   * Starts iteration over the {@link #yield yielded} elements, running the yielded continuations
+   * concurrently on {@code pool}. For example, to list the files of a directory tree when the order
+   * doesn't matter:
+   *
+   * <pre>{@code
+   * class ListFiles extends Iteration<Path> {
+   *   ListFiles under(Path dir) {
+   *     for (Path path : listDirectory(dir)) {
+   *       if (Files.isDirectory(path)) {
+   *         yield(() -> under(path));
+   *       } else {
+   *         yield(path);
+   *       }
+   *     }
+   *     return this;
+   *   }
+   * }
+   *
+   * new ListFiles().under(root).iterateConcurrently(pool).forEach(...);
+   * }</pre>
+   *
+   * <p>Each yielded {@link Continuation} becomes a fork-join task, so continuations yielded in the
+   * same frame (like the left and right subtrees of a tree) run concurrently, and idle workers can
+   * steal them. Yielded elements are handed to the returned stream directly. The returned stream
+   * is sequential and unordered: elements are returned in the order they are yielded, which isn't
+   * deterministic.
+   *
+   * <p>Only use this method when the yielded continuations are independent of each other. Their
+   * code must be thread-safe, and a continuation must not rely on the side effects of the
+   * continuations yielded before it, which may not have run yet. For example {@link
+   * #yield(Supplier, Consumer)} with a computation that reads the results of sibling continuations
+   * won't work. Similar to {@link MoreStreams#generateConcurrently}, the iteration isn't throttled
+   * by consumption, and if a continuation throws, the outstanding continuations are abandoned and
+   * the exception is rethrown in the consuming thread.
+   *
+   * <p>Because an {@code Iteration} instance is stateful and mutable, {@code iterate()} or {@code
+   * iterateConcurrently()} can be called at most once per instance.
+   *
+   * @throws IllegalStateException if the iteration has already been started.
+   * @since 5.3
+   */
+  public final Stream<T> iterateConcurrently(ForkJoinPool pool) {
+    requireNonNull(pool);
+    start();
+    Object[] initialFrame = new Object[stackSize()];
+    for (int i = 0; i < initialFrame.length; i++) {
+      Continuation continuation = continuationAt(i);
+      initialFrame[i] = continuation == null ? elements[i] : continuation;
+    }
+    concurrentSink = new ThreadLocal<>();
+    elements = null;
+    discardStack();
+    Continuation root = () -> {
+      for (Object item : initialFrame) {
+        if (item instanceof Continuation) {
+          currentSink().fork((Continuation) item);
+        } else {
+          @SuppressWarnings("unchecked")  // we only put T in the elements array.
+          T element = (T) item;
+          currentSink().emit(element);
+        }
+      }
+    };
+    return ConcurrentGenerator.expand(root, this::runConcurrently, pool);
+  }
+
   /**
    * Encapsulates recursive iteration or a lazy block of code with side-effect.
    *
@@ -281,28 +366,50 @@ public class Iteration<T> {
     void run();
   }
 
-  private T next() {
-    for (; ;) {
-      Object top = poll();
-      if (top instanceof Continuation) {
-        ((Continuation) top).run();
+  /** Runs {@code continuation}, passing what it yields to {@code sink}. */
+  private void runConcurrently(
+      Continuation continuation, ConcurrentGenerator.Sink<Continuation, T> sink) {
+    // The worker thread may be running another continuation that's waiting on a nested join.
+    ConcurrentGenerator.Sink<Continuation, T> outer = concurrentSink.get();
+    concurrentSink.set(sink);
+    try {
+      continuation.run();
+    } finally {
+      if (outer == null) {
+        concurrentSink.remove();
       } else {
-        @SuppressWarnings("unchecked")  // we only put either T or Continuation in the stack.
-        T element = (T) top;
-        return element;
+        concurrentSink.set(outer);
       }
     }
   }
 
-  private Object poll() {
-    Object top = stackFrame.poll();
-    if (top == null) {
-      return stack.poll();
+  private ConcurrentGenerator.Sink<Continuation, T> currentSink() {
+    ConcurrentGenerator.Sink<Continuation, T> sink = concurrentSink.get();
+    if (sink == null) {
+      throw new IllegalStateException(
+          "yield() can only be called by continuations during concurrent iteration.");
     }
-    for (Object second = stackFrame.poll(); second != null; second = stackFrame.poll()) {
-      stack.push(top);
-      top = second;
+    return sink;
+  }
+
+  private T next() {
+    int top = popValue();
+    if (top < 0) {
+      return null;
     }
-    return top;
+    @SuppressWarnings("unchecked")  // we only put T in the elements array.
+    T element = (T) elements[top];
+    elements[top] = null;
+    return element;
+  }
+
+  @Override final void resizeValues(int capacity) {
+    elements = Arrays.copyOf(elements, capacity);
+  }
+
+  @Override final void swapValues(int i, int j) {
+    Object element = elements[i];
+    elements[i] = elements[j];
+    elements[j] = element;
   }
 }
@@ -0,0 +1,115 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.mu.util.stream.Iteration.Continuation;
+
+/**
+ * The stack of yielded values and pending continuations shared by {@link Iteration}, {@link
+ * IntIteration}, {@link LongIteration} and {@link DoubleIteration}.
+ *
+ * <p>Subclasses keep the yielded values in an array parallel to the continuations, where a null
+ * continuation slot marks a value. Slots at and above {@code frameStart} were yielded by the
+ * current frame and are still in yield order; they are reversed in place before the next pop.
+ */
+abstract class IterationStack {
+  static final int INITIAL_CAPACITY = 8;
+
+  private Continuation[] continuations = new Continuation[INITIAL_CAPACITY];
+  private int size;
+  private int frameStart;
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  /** Resizes the value array to {@code capacity}. */
+  abstract void resizeValues(int capacity);
+
+  /** Swaps the values at {@code i} and {@code j}. */
+  abstract void swapValues(int i, int j);
+
+  /** Marks the iteration as started. */
+  final void start() {
+    if (started.getAndSet(true)) {
+      throw new IllegalStateException("Iteration already started.");
+    }
+  }
+
+  /** Returns the index to store the next yielded value at. */
+  final int pushValue() {
+    ensureCapacity();
+    return size++;
+  }
+
+  final void pushContinuation(Continuation continuation) {
+    requireNonNull(continuation);
+    ensureCapacity();
+    continuations[size++] = continuation;
+  }
+
+  /**
+   * Runs the continuations until a value is on top of the stack, then pops it and returns its
+   * index. Returns -1 if the stack is exhausted.
+   */
+  final int popValue() {
+    while (size > 0) {
+      reverseFrame();
+      int top = --size;
+      frameStart = size;
+      Continuation continuation = continuations[top];
+      if (continuation == null) {
+        return top;
+      }
+      continuations[top] = null;
+      continuation.run();
+    }
+    return -1;
+  }
+
+  /** Returns the number of values and continuations on the stack. */
+  final int stackSize() {
+    return size;
+  }
+
+  /** Returns the continuation at {@code index}, or null if it's a value. */
+  final Continuation continuationAt(int index) {
+    return continuations[index];
+  }
+
+  /** Discards the stack, after which it must no longer be used. */
+  final void discardStack() {
+    continuations = null;
+    size = 0;
+  }
+
+  private void reverseFrame() {
+    for (int i = frameStart, j = size - 1; i < j; i++, j--) {
+      swapValues(i, j);
+      Continuation continuation = continuations[i];
+      continuations[i] = continuations[j];
+      continuations[j] = continuation;
+    }
+  }
+
+  private void ensureCapacity() {
+    if (size == continuations.length) {
+      continuations = Arrays.copyOf(continuations, size * 2);
+      resizeValues(size * 2);
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.BiStream.kv;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** Implementation of the key-based join operations of {@link BiStream}. */
+final class Joins {
+  static <K, V1, V2, R> BiStream<K, R> hashJoin(
+      BiStream<K, V1> left,
+      BiStream<? extends K, ? extends V2> right,
+      BiFunction<? super V1, ? super V2, ? extends R> joiner) {
+    requireNonNull(right);
+    requireNonNull(joiner);
+    return lazily(left, right, () -> {
+      Spliterator<? extends Map.Entry<? extends K, ? extends V1>> leftPairs =
+          left.mapToEntry().spliterator();
+      Spliterator<? extends Map.Entry<? extends K, ? extends V2>> rightPairs =
+          right.mapToEntry().spliterator();
+      long leftSize = leftPairs.getExactSizeIfKnown();
+      long rightSize = rightPairs.getExactSizeIfKnown();
+      if (leftSize >= 0 && rightSize >= 0 && leftSize < rightSize) {
+        Map<K, List<V1>> table = groupValuesByKey(leftPairs);
+        return StreamSupport.stream(rightPairs, false)
+            .flatMap(r -> matches(table, r.getKey()).stream()
+                .map(l -> kv(r.getKey(), joiner.apply(l, r.getValue()))));
+      }
+      Map<K, List<V2>> table = groupValuesByKey(rightPairs);
+      return StreamSupport.stream(leftPairs, false)
+          .flatMap(l -> matches(table, l.getKey()).stream()
+              .map(r -> kv(l.getKey(), joiner.apply(l.getValue(), r))));
+    });
+  }
+
+  static <K, V1, V2, R> BiStream<K, R> leftHashJoin(
+      BiStream<K, V1> left,
+      BiStream<? extends K, ? extends V2> right,
+      BiFunction<? super V1, ? super V2, ? extends R> joiner) {
+    requireNonNull(right);
+    requireNonNull(joiner);
+    return lazily(left, right, () -> {
+      Map<K, List<V2>> table = groupValuesByKey(right.mapToEntry().spliterator());
+      return left.mapToEntry().flatMap(l -> {
+        List<V2> matches = table.get(l.getKey());
+        return matches == null
+            ? Stream.of(kv(l.getKey(), joiner.apply(l.getValue(), null)))
+            : matches.stream().map(r -> kv(l.getKey(), joiner.apply(l.getValue(), r)));
+      });
+    });
+  }
+
+  static <K, V1, V2, R> BiStream<K, R> coGroup(
+      BiStream<K, V1> left,
+      BiStream<? extends K, ? extends V2> right,
+      BiFunction<? super List<V1>, ? super List<V2>, ? extends R> joiner) {
+    requireNonNull(right);
+    requireNonNull(joiner);
+    return lazily(left, right, () -> {
+      Map<K, List<V1>> leftGroups = groupValuesByKey(left.mapToEntry().spliterator());
+      Map<K, List<V2>> rightGroups = groupValuesByKey(right.mapToEntry().spliterator());
+      Stream<Map.Entry<K, R>> leftKeys = leftGroups.entrySet().stream()
+          .map(e -> kv(e.getKey(), joiner.apply(e.getValue(), matches(rightGroups, e.getKey()))));
+      Stream<Map.Entry<K, R>> rightOnlyKeys = rightGroups.entrySet().stream()
+          .filter(e -> !leftGroups.containsKey(e.getKey()))
+          .map(e -> kv(e.getKey(), joiner.apply(Collections.<V1>emptyList(), e.getValue())));
+      return Stream.concat(leftKeys, rightOnlyKeys);
+    });
+  }
+
+  static <K, V1, V2, R> BiStream<K, R> sortMergeJoin(
+      BiStream<K, V1> left,
+      BiStream<? extends K, ? extends V2> right,
+      Comparator<? super K> keyOrder,
+      BiFunction<? super V1, ? super V2, ? extends R> joiner) {
+    requireNonNull(right);
+    requireNonNull(keyOrder);
+    requireNonNull(joiner);
+    return lazily(left, right, () -> StreamSupport.stream(
+        new SortMergeSpliterator<K, V1, V2, R>(
+            left.mapToEntry().iterator(), right.mapToEntry().iterator(), keyOrder, joiner),
+        false));
+  }
+
+  static <L, R> BiStream<L, R> blockedCrossJoin(
+      Stream<L> left, Stream<R> right, BiPredicate<? super L, ? super R> condition) {
+    requireNonNull(left);
+    requireNonNull(right);
+    requireNonNull(condition);
+    Stream<Map.Entry<L, R>> joined = StreamSupport.stream(
+        () -> {
+          List<L> leftList = left.collect(toList());
+          List<R> rightList = right.collect(toList());
+          return new TileSpliterator<>(leftList, rightList, condition);
+        },
+        Spliterator.ORDERED,
+        left.isParallel());
+    return BiStream.fromEntries(joined.onClose(left::close).onClose(right::close));
+  }
+
+  /**
+   * Defers {@code join} until the terminal operation so that neither input is consumed
+   * before the result stream is.
+   */
+  private static <K, R, E extends Map.Entry<? extends K, ? extends R>> BiStream<K, R> lazily(
+      BiStream<?, ?> left, BiStream<?, ?> right, Supplier<? extends Stream<E>> join) {
+    Stream<E> joined =
+        StreamSupport.stream(() -> join.get().spliterator(), Spliterator.ORDERED, false);
+    return BiStream.fromEntries(joined.onClose(left::close).onClose(right::close));
+  }
+
+  private static <K, V> Map<K, List<V>> groupValuesByKey(
+      Spliterator<? extends Map.Entry<? extends K, ? extends V>> pairs) {
+    Map<K, List<V>> groups = new LinkedHashMap<>();
+    pairs.forEachRemaining(
+        e -> groups.computeIfAbsent(e.getKey(), k -> new ArrayList<>(1)).add(e.getValue()));
+    return groups;
+  }
+
+  private static <K, V> List<V> matches(Map<K, List<V>> table, K key) {
+    return table.getOrDefault(key, Collections.emptyList());
+  }
+
+  /**
+   * Merges two streams sorted by key. At any time, only the run of right-side values matching the
+   * current key is buffered.
+   */
+  private static final class SortMergeSpliterator<K, V1, V2, R>
+      extends AbstractSpliterator<Map.Entry<K, R>> {
+    private final Iterator<? extends Map.Entry<? extends K, ? extends V1>> left;
+    private final Iterator<? extends Map.Entry<? extends K, ? extends V2>> right;
+    private final Comparator<? super K> keyOrder;
+    private final BiFunction<? super V1, ? super V2, ? extends R> joiner;
+    private final List<V2> run = new ArrayList<>();
+    private final Deque<Map.Entry<K, R>> pending = new ArrayDeque<>();
+    private Map.Entry<? extends K, ? extends V2> nextRight;
+    private K runKey;
+
+    SortMergeSpliterator(
+        Iterator<? extends Map.Entry<? extends K, ? extends V1>> left,
+        Iterator<? extends Map.Entry<? extends K, ? extends V2>> right,
+        Comparator<? super K> keyOrder,
+        BiFunction<? super V1, ? super V2, ? extends R> joiner) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED);
+      this.left = left;
+      this.right = right;
+      this.keyOrder = keyOrder;
+      this.joiner = joiner;
+      this.nextRight = right.hasNext() ? right.next() : null;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super Map.Entry<K, R>> action) {
+      while (pending.isEmpty()) {
+        if (!left.hasNext()) return false;
+        Map.Entry<? extends K, ? extends V1> l = left.next();
+        K key = l.getKey();
+        if (run.isEmpty() || keyOrder.compare(key, runKey) != 0) {
+          run.clear();
+          while (nextRight != null && keyOrder.compare(nextRight.getKey(), key) < 0) {
+            nextRight = right.hasNext() ? right.next() : null;
+          }
+          while (nextRight != null && keyOrder.compare(nextRight.getKey(), key) == 0) {
+            run.add(nextRight.getValue());
+            nextRight = right.hasNext() ? right.next() : null;
+          }
+          runKey = key;
+        }
+        for (V2 v2 : run) {
+          pending.add(kv(key, joiner.apply(l.getValue(), v2)));
+        }
+      }
+      action.accept(pending.remove());
+      return true;
+    }
+  }
+
+  /**
+   * Iterates over the cross product tile by tile, with each tile pairing a block of left elements
+   * with a block of right elements. Each tile's working set stays small enough to remain in cache,
+   * and tiles are split off evenly for parallel execution.
+   */
+  private static final class TileSpliterator<L, R> implements Spliterator<Map.Entry<L, R>> {
+    private static final int BLOCK = 256;
+
+    private final List<L> left;
+    private final List<R> right;
+    private final BiPredicate<? super L, ? super R> condition;
+    private final long leftBlocks;
+    private long tile;
+    private final long endTile;
+    // Position within the current tile
+    private int r = -1;
+    private int l;
+
+    TileSpliterator(List<L> left, List<R> right, BiPredicate<? super L, ? super R> condition) {
+      this(left, right, condition, 0, blocks(left.size()) * blocks(right.size()));
+    }
+
+    private TileSpliterator(
+        List<L> left,
+        List<R> right,
+        BiPredicate<? super L, ? super R> condition,
+        long fromTile,
+        long endTile) {
+      this.left = left;
+      this.right = right;
+      this.condition = condition;
+      this.leftBlocks = blocks(left.size());
+      this.tile = fromTile;
+      this.endTile = endTile;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super Map.Entry<L, R>> action) {
+      for (; tile < endTile; tile++, r = -1) {
+        int leftStart = (int) (tile % leftBlocks) * BLOCK;
+        int leftEnd = Math.min(leftStart + BLOCK, left.size());
+        int rightStart = (int) (tile / leftBlocks) * BLOCK;
+        int rightEnd = Math.min(rightStart + BLOCK, right.size());
+        if (r < 0) {
+          r = rightStart;
+          l = leftStart;
+        }
+        for (; r < rightEnd; r++, l = leftStart) {
+          R rightElement = right.get(r);
+          while (l < leftEnd) {
+            L leftElement = left.get(l++);
+            if (condition.test(leftElement, rightElement)) {
+              action.accept(kv(leftElement, rightElement));
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    @Override public Spliterator<Map.Entry<L, R>> trySplit() {
+      if (r >= 0) {
+        return null; // Don't split a partially consumed tile
+      }
+      long remaining = endTile - tile;
+      if (remaining < 2) {
+        return null;
+      }
+      long mid = tile + remaining / 2;
+      Spliterator<Map.Entry<L, R>> prefix =
+          new TileSpliterator<>(left, right, condition, tile, mid);
+      tile = mid;
+      return prefix;
+    }
+
+    @Override public long estimateSize() {
+      return (endTile - tile) * BLOCK * BLOCK;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.ORDERED;
+    }
+
+    private static long blocks(int size) {
+      return (size + BLOCK - 1) / BLOCK;
+    }
+  }
+
+  private Joins() {}
+}
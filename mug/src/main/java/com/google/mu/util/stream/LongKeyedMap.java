@@ -0,0 +1,195 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * An immutable map keyed by primitive {@code long}, without boxing the keys.
+ *
+ * <p>The keys are stored in a sorted {@code long[]} with the values in a parallel array, taking
+ * about 12 to 16 bytes per entry plus the values themselves, compared to about 80 bytes per entry
+ * of a {@code HashMap<Long, V>}. Lookup is by binary search, in {@code O(log n)} time.
+ *
+ * <p>Null values aren't allowed.
+ *
+ * @since 5.3
+ */
+public final class LongKeyedMap<V> {
+  private static final LongKeyedMap<?> EMPTY = new LongKeyedMap<>(new long[0], new Object[0]);
+
+  private final long[] keys;
+  private final Object[] values;
+
+  private LongKeyedMap(long[] keys, Object[] values) {
+    this.keys = keys;
+    this.values = values;
+  }
+
+  /** Returns an empty {@code LongKeyedMap}. */
+  @SuppressWarnings("unchecked")
+  public static <V> LongKeyedMap<V> of() {
+    return (LongKeyedMap<V>) EMPTY;
+  }
+
+  /**
+   * Returns a {@code Collector} that collects the input elements into a {@code LongKeyedMap},
+   * with keys computed by {@code toKey} and values computed by {@code toValue}.
+   *
+   * <p>Parallel streams are supported.
+   *
+   * @throws IllegalStateException upon collection if there are duplicate keys
+   */
+  public static <T, V> Collector<T, ?, LongKeyedMap<V>> toLongKeyedMap(
+      ToLongFunction<? super T> toKey, Function<? super T, ? extends V> toValue) {
+    requireNonNull(toKey);
+    requireNonNull(toValue);
+    return Collector.of(
+        Builder<V>::new,
+        (builder, element) -> builder.add(toKey.applyAsLong(element), toValue.apply(element)),
+        Builder::addAll,
+        Builder::build);
+  }
+
+  /**
+   * Returns a {@link BiCollector} that collects the pairs of a {@code BiStream} into a
+   * {@code LongKeyedMap}. For example:
+   *
+   * <pre>{@code
+   * LongKeyedMap<Account> accountsById = BiStream.from(accounts, Account::id, a -> a)
+   *     .collect(LongKeyedMap.toLongKeyedMap());
+   * }</pre>
+   *
+   * @throws IllegalStateException upon collection if there are duplicate keys
+   */
+  public static <V> BiCollector<Long, V, LongKeyedMap<V>> toLongKeyedMap() {
+    return new BiCollector<Long, V, LongKeyedMap<V>>() {
+      @Override public <E> Collector<E, ?, LongKeyedMap<V>> splitting(
+          Function<E, Long> toKey, Function<E, V> toValue) {
+        return toLongKeyedMap(e -> toKey.apply(e), toValue);
+      }
+    };
+  }
+
+  /** Returns the number of entries. */
+  public int size() {
+    return keys.length;
+  }
+
+  /** Returns true if there are no entries. */
+  public boolean isEmpty() {
+    return keys.length == 0;
+  }
+
+  /** Returns true if {@code key} is mapped. */
+  public boolean containsKey(long key) {
+    return Arrays.binarySearch(keys, key) >= 0;
+  }
+
+  /** Returns the value mapped to {@code key}, or null if not mapped. */
+  public V get(long key) {
+    return getOrDefault(key, null);
+  }
+
+  /** Returns the value mapped to {@code key}, or {@code defaultValue} if not mapped. */
+  public V getOrDefault(long key, V defaultValue) {
+    int index = Arrays.binarySearch(keys, key);
+    return index < 0 ? defaultValue : valueAt(index);
+  }
+
+  /** Returns the keys in ascending order. */
+  public LongStream keys() {
+    return Arrays.stream(keys);
+  }
+
+  /**
+   * Returns the entries as a {@code BiStream} in ascending order of the keys. The stream is sized
+   * and evenly splittable; keys are only boxed as they are streamed.
+   */
+  public BiStream<Long, V> stream() {
+    return BiStream.indexed(IntStream.range(0, keys.length), i -> keys[i], this::valueAt);
+  }
+
+  @Override public int hashCode() {
+    return Arrays.hashCode(keys) * 31 + Arrays.hashCode(values);
+  }
+
+  @Override public boolean equals(Object obj) {
+    if (obj instanceof LongKeyedMap) {
+      LongKeyedMap<?> that = (LongKeyedMap<?>) obj;
+      return Arrays.equals(keys, that.keys) && Arrays.equals(values, that.values);
+    }
+    return false;
+  }
+
+  /** Returns the string representation in the form of {@code "{1=foo, 2=bar}"}. */
+  @Override public String toString() {
+    return stream().mapToObj((k, v) -> k + "=" + v).collect(joining(", ", "{", "}"));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int index) {
+    return (V) values[index];
+  }
+
+  private static final class Builder<V> {
+    private long[] keys = new long[8];
+    private Object[] values = new Object[8];
+    private int size;
+
+    void add(long key, V value) {
+      requireNonNull(value);
+      ensureCapacity(size + 1);
+      keys[size] = key;
+      values[size] = value;
+      size++;
+    }
+
+    Builder<V> addAll(Builder<V> that) {
+      ensureCapacity(size + that.size);
+      System.arraycopy(that.keys, 0, keys, size, that.size);
+      System.arraycopy(that.values, 0, values, size, that.size);
+      size += that.size;
+      return this;
+    }
+
+    LongKeyedMap<V> build() {
+      if (size == 0) {
+        return of();
+      }
+      LongKeys.sortDistinct(keys, size, (i, j) -> {
+        Object value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+      });
+      return new LongKeyedMap<>(Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+    }
+
+    private void ensureCapacity(int minCapacity) {
+      keys = LongKeys.ensureCapacity(keys, minCapacity);
+      if (values.length < keys.length) {
+        values = Arrays.copyOf(values, keys.length);
+      }
+    }
+  }
+}
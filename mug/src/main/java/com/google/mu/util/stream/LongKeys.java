@@ -0,0 +1,113 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for maps keyed by {@code long} that store the keys in a sorted array, with the values
+ * in a parallel array at the same indexes.
+ */
+final class LongKeys {
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** Swaps the values at index {@code i} and index {@code j} of the value column. */
+  interface Swapper {
+    void swap(int i, int j);
+  }
+
+  /** Returns {@code array} or a copy of it with room for at least {@code minCapacity} elements. */
+  static long[] ensureCapacity(long[] array, int minCapacity) {
+    return minCapacity <= array.length
+        ? array
+        : Arrays.copyOf(array, newCapacity(array.length, minCapacity));
+  }
+
+  static int newCapacity(int oldCapacity, int minCapacity) {
+    if (minCapacity < 0) {
+      throw new OutOfMemoryError("Too many entries");
+    }
+    int newCapacity = oldCapacity + (oldCapacity >> 1) + 1;
+    return newCapacity < minCapacity || newCapacity < 0 ? minCapacity : newCapacity;
+  }
+
+  /**
+   * Sorts {@code keys[0, size)} in place, with {@code values} swapped in tandem.
+   *
+   * @throws IllegalStateException if there are duplicate keys
+   */
+  static void sortDistinct(long[] keys, int size, Swapper values) {
+    if (!isSorted(keys, size)) {
+      quickSort(keys, 0, size - 1, values);
+    }
+    for (int i = 1; i < size; i++) {
+      if (keys[i - 1] == keys[i]) {
+        throw new IllegalStateException("Duplicate key: " + keys[i]);
+      }
+    }
+  }
+
+  // Input keys are often already sorted, such as when extracted from a sorted table.
+  private static boolean isSorted(long[] keys, int size) {
+    for (int i = 1; i < size; i++) {
+      if (keys[i - 1] > keys[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void quickSort(long[] keys, int from, int to, Swapper values) {
+    while (to - from >= INSERTION_SORT_THRESHOLD) {
+      int mid = (from + to) >>> 1;
+      // Median of three, leaving the pivot at mid.
+      if (keys[mid] < keys[from]) swap(keys, from, mid, values);
+      if (keys[to] < keys[from]) swap(keys, from, to, values);
+      if (keys[to] < keys[mid]) swap(keys, mid, to, values);
+      long pivot = keys[mid];
+      int i = from;
+      int j = to;
+      while (i <= j) {
+        while (keys[i] < pivot) i++;
+        while (keys[j] > pivot) j--;
+        if (i <= j) {
+          swap(keys, i++, j--, values);
+        }
+      }
+      // Recurse into the smaller half to bound the stack depth.
+      if (j - from < to - i) {
+        quickSort(keys, from, j, values);
+        from = i;
+      } else {
+        quickSort(keys, i, to, values);
+        to = j;
+      }
+    }
+    for (int i = from + 1; i <= to; i++) {
+      for (int j = i; j > from && keys[j - 1] > keys[j]; j--) {
+        swap(keys, j - 1, j, values);
+      }
+    }
+  }
+
+  private static void swap(long[] keys, int i, int j, Swapper values) {
+    long key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    values.swap(i, j);
+  }
+
+  private LongKeys() {}
+}
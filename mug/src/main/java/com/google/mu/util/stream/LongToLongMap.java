@@ -0,0 +1,179 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * An immutable map from primitive {@code long} to primitive {@code long}, without boxing.
+ *
+ * <p>The keys are stored in a sorted {@code long[]} with the values in a parallel {@code long[]},
+ * taking 16 bytes per entry. Lookup is by binary search, in {@code O(log n)} time.
+ *
+ * @since 5.3
+ */
+public final class LongToLongMap {
+  private static final LongToLongMap EMPTY = new LongToLongMap(new long[0], new long[0]);
+
+  private final long[] keys;
+  private final long[] values;
+
+  private LongToLongMap(long[] keys, long[] values) {
+    this.keys = keys;
+    this.values = values;
+  }
+
+  /** Returns an empty {@code LongToLongMap}. */
+  public static LongToLongMap of() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a {@code Collector} that collects the input elements into a {@code LongToLongMap},
+   * with keys computed by {@code toKey} and values computed by {@code toValue}.
+   *
+   * <p>Parallel streams are supported.
+   *
+   * @throws IllegalStateException upon collection if there are duplicate keys
+   */
+  public static <T> Collector<T, ?, LongToLongMap> toLongToLongMap(
+      ToLongFunction<? super T> toKey, ToLongFunction<? super T> toValue) {
+    requireNonNull(toKey);
+    requireNonNull(toValue);
+    return Collector.of(
+        Builder::new,
+        (builder, element) ->
+            builder.add(toKey.applyAsLong(element), toValue.applyAsLong(element)),
+        Builder::addAll,
+        Builder::build);
+  }
+
+  /**
+   * Returns a {@link BiCollector} that collects the pairs of a {@code BiStream} into a
+   * {@code LongToLongMap}.
+   *
+   * @throws IllegalStateException upon collection if there are duplicate keys
+   */
+  public static BiCollector<Long, Long, LongToLongMap> toLongToLongMap() {
+    return new BiCollector<Long, Long, LongToLongMap>() {
+      @Override public <E> Collector<E, ?, LongToLongMap> splitting(
+          Function<E, Long> toKey, Function<E, Long> toValue) {
+        return toLongToLongMap(e -> toKey.apply(e), e -> toValue.apply(e));
+      }
+    };
+  }
+
+  /** Returns the number of entries. */
+  public int size() {
+    return keys.length;
+  }
+
+  /** Returns true if there are no entries. */
+  public boolean isEmpty() {
+    return keys.length == 0;
+  }
+
+  /** Returns true if {@code key} is mapped. */
+  public boolean containsKey(long key) {
+    return Arrays.binarySearch(keys, key) >= 0;
+  }
+
+  /** Returns the value mapped to {@code key}, or {@code defaultValue} if not mapped. */
+  public long getOrDefault(long key, long defaultValue) {
+    int index = Arrays.binarySearch(keys, key);
+    return index < 0 ? defaultValue : values[index];
+  }
+
+  /** Returns the keys in ascending order. */
+  public LongStream keys() {
+    return Arrays.stream(keys);
+  }
+
+  /** Returns the values in the ascending order of their keys. */
+  public LongStream values() {
+    return Arrays.stream(values);
+  }
+
+  /**
+   * Returns the entries as a {@code BiStream} in ascending order of the keys. The stream is sized
+   * and evenly splittable; keys and values are only boxed as they are streamed.
+   */
+  public BiStream<Long, Long> stream() {
+    return BiStream.indexed(IntStream.range(0, keys.length), i -> keys[i], i -> values[i]);
+  }
+
+  @Override public int hashCode() {
+    return Arrays.hashCode(keys) * 31 + Arrays.hashCode(values);
+  }
+
+  @Override public boolean equals(Object obj) {
+    if (obj instanceof LongToLongMap) {
+      LongToLongMap that = (LongToLongMap) obj;
+      return Arrays.equals(keys, that.keys) && Arrays.equals(values, that.values);
+    }
+    return false;
+  }
+
+  /** Returns the string representation in the form of {@code "{1=10, 2=20}"}. */
+  @Override public String toString() {
+    return stream().mapToObj((k, v) -> k + "=" + v).collect(joining(", ", "{", "}"));
+  }
+
+  private static final class Builder {
+    private long[] keys = new long[8];
+    private long[] values = new long[8];
+    private int size;
+
+    void add(long key, long value) {
+      ensureCapacity(size + 1);
+      keys[size] = key;
+      values[size] = value;
+      size++;
+    }
+
+    Builder addAll(Builder that) {
+      ensureCapacity(size + that.size);
+      System.arraycopy(that.keys, 0, keys, size, that.size);
+      System.arraycopy(that.values, 0, values, size, that.size);
+      size += that.size;
+      return this;
+    }
+
+    LongToLongMap build() {
+      if (size == 0) {
+        return EMPTY;
+      }
+      LongKeys.sortDistinct(keys, size, (i, j) -> {
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+      });
+      return new LongToLongMap(Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+    }
+
+    private void ensureCapacity(int minCapacity) {
+      keys = LongKeys.ensureCapacity(keys, minCapacity);
+      values = LongKeys.ensureCapacity(values, keys.length);
+    }
+  }
+}
@@ -17,22 +17,34 @@ package com.google.mu.util.stream;
 import static com.google.mu.util.stream.BiCollectors.toMap;
 import static java.util.Objects.requireNonNull;
 
+import java.time.Duration;
 import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -111,6 +123,41 @@ public final class MoreStreams {
             }));
   }
 
+  /**
+   * Similar to {@link #generate(Object, Function)}, returns a stream of {@code seed}, elements of
+   * step(seed), elements of step(x) for each x in step(seed), etc., except that the expansion runs
+   * concurrently on {@code pool}. Each generated element is expanded by its own fork-join task, so
+   * a large fanout is picked up by idle workers through work stealing, scaling the generation
+   * across cores. For example, to crawl a dependency graph where computing the dependencies is
+   * expensive:
+   *
+   * <pre>{@code
+   * Set<Module> visited = ConcurrentHashMap.newKeySet();
+   * visited.add(root);
+   * generateConcurrently(root, m -> m.resolveDependencies().filter(visited::add), pool)
+   *     .forEach(...);
+   * }</pre>
+   *
+   * <p>The returned stream is sequential and unordered: elements are returned in the order they
+   * are generated, which isn't deterministic. Since {@code step} is called concurrently, it must be
+   * thread-safe. The generation isn't throttled by consumption, so it should only be used when
+   * the total number of generated elements is bounded.
+   *
+   * <p>If {@code step} throws, the outstanding expansions are abandoned and the exception is
+   * rethrown in the consuming thread. Closing the returned stream (for example with
+   * try-with-resources) also abandons the outstanding expansions; so does an interruption of the
+   * consuming thread, which results in {@link java.util.concurrent.CancellationException}.
+   *
+   * <p>Null elements aren't supported. If {@code step} returns null, it's treated as an empty
+   * stream.
+   *
+   * @since 5.3
+   */
+  public static <T> Stream<T> generateConcurrently(
+      T seed, Function<? super T, ? extends Stream<? extends T>> step, ForkJoinPool pool) {
+    return ConcurrentGenerator.generate(seed, step, pool);
+  }
+
   /**
    * Flattens {@code streamOfStream} and returns an unordered sequential stream of the nested
    * elements.
@@ -128,6 +175,33 @@ public final class MoreStreams {
     return mapBySpliterator(streamOfStream.sequential(), 0, FlattenedSpliterator<T>::new);
   }
 
+  /**
+   * Flattens {@code streamOfStream} and returns an unordered stream of the nested elements,
+   * which is parallel if {@code streamOfStream} is parallel.
+   *
+   * <p>Unlike {@link #flatten}, which always returns a sequential stream, a parallel stream
+   * returned by this method splits both across the nested streams and, once they can no longer be
+   * split, within a single large nested stream if it's {@link Spliterator#SIZED} (as in
+   * {@code list.stream()}). This way the available parallelism is proportional to the total
+   * number of elements rather than the number of nested streams. For example:
+   *
+   * <pre>{@code
+   * flattenBalanced(shards.parallelStream().map(Shard::records))
+   *     .forEach(this::process);
+   * }</pre>
+   *
+   * <p>Like {@link #flatten}, the returned stream doesn't report {@link Spliterator#ORDERED}, so
+   * parallel operations such as {@code findFirst()}, {@code limit()} and {@code forEachOrdered()}
+   * aren't guaranteed to follow the order of the nested elements. Short-circuiting and infinite
+   * nested streams are supported.
+   *
+   * @since 5.3
+   */
+  public static <T> Stream<T> flattenBalanced(
+      Stream<? extends Stream<? extends T>> streamOfStream) {
+    return mapBySpliterator(streamOfStream, 0, FlattenedSpliterator<T>::new);
+  }
+
   /**
    * Iterates through {@code stream} <em>only once</em>. It's strongly recommended
    * to avoid assigning the return value to a variable or passing it to any other method because
@@ -217,6 +291,224 @@ public final class MoreStreams {
     return new DicedSpliterator<T>(spliterator, maxSize);
   }
 
+  /**
+   * Dices {@code stream} into {@code int[]} chunks each with up to {@code maxSize} elements,
+   * without boxing. Each chunk is exactly sized, with no {@code List} or {@code Integer} wrapper
+   * allocated.
+   *
+   * <p>Like {@link #dice(Stream, int)}, a parallel stream is diced in parallel, each split
+   * independently.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0}
+   * @since 5.3
+   */
+  public static Stream<int[]> dice(IntStream stream, int maxSize) {
+    requireNonNull(stream);
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+    return StreamSupport.stream(
+            () -> new DicedPrimitiveSpliterator<int[], IntConsumer, Spliterator.OfInt>(
+                stream.spliterator(), () -> new IntBuffer(maxSize)),
+            Spliterator.NONNULL,
+            stream.isParallel())
+        .onClose(stream::close);
+  }
+
+  /**
+   * Dices {@code stream} into {@code long[]} chunks each with up to {@code maxSize} elements,
+   * without boxing. Each chunk is exactly sized, with no {@code List} or {@code Long} wrapper
+   * allocated.
+   *
+   * <p>Like {@link #dice(Stream, int)}, a parallel stream is diced in parallel, each split
+   * independently.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0}
+   * @since 5.3
+   */
+  public static Stream<long[]> dice(LongStream stream, int maxSize) {
+    requireNonNull(stream);
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+    return StreamSupport.stream(
+            () -> new DicedPrimitiveSpliterator<long[], LongConsumer, Spliterator.OfLong>(
+                stream.spliterator(), () -> new LongBuffer(maxSize)),
+            Spliterator.NONNULL,
+            stream.isParallel())
+        .onClose(stream::close);
+  }
+
+  /**
+   * Dices {@code stream} into chunks each with up to {@code maxSize} elements, and passes each
+   * chunk to {@code chunkConsumer} in encounter order. For example:
+   *
+   * <pre>{@code
+   * forEachChunk(events, 500, batch -> sink.writeAll(batch));
+   * }</pre>
+   *
+   * <p>Unlike {@link #dice(Stream, int)}, the same buffer is reused for every chunk, so no
+   * allocation is incurred per chunk. The {@code List} passed to {@code chunkConsumer} is a
+   * read-only view that's only valid during the call. It must not be retained; copy it if needed.
+   *
+   * <p>{@code stream} is consumed sequentially in the calling thread.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0}
+   * @since 5.3
+   */
+  public static <T> void forEachChunk(
+      Stream<? extends T> stream, int maxSize, Consumer<? super List<T>> chunkConsumer) {
+    requireNonNull(stream);
+    requireNonNull(chunkConsumer);
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+    Spliterator<? extends T> elements = stream.spliterator();
+    List<T> buffer = new ArrayList<>(initialChunkSize(elements.estimateSize(), maxSize));
+    List<T> view = Collections.unmodifiableList(buffer);
+    Consumer<T> append = buffer::add;
+    while (elements.tryAdvance(append)) {
+      if (buffer.size() == maxSize) {
+        chunkConsumer.accept(view);
+        buffer.clear();
+      }
+    }
+    if (!buffer.isEmpty()) {
+      chunkConsumer.accept(view);
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Dices {@code stream} into chunks each with up to {@code maxSize} elements, and passes each
+   * chunk to {@code chunkConsumer} in encounter order, as a buffer along with the chunk's length.
+   * For example:
+   *
+   * <pre>{@code
+   * forEachChunk(ids, 500, (buffer, length) -> index.removeAll(buffer, 0, length));
+   * }</pre>
+   *
+   * <p>Unlike {@link #dice(IntStream, int)}, the same buffer is reused for every chunk, so no
+   * allocation is incurred per chunk. Only the first {@code length} elements of the buffer belong
+   * to the chunk. The buffer is only valid during the call and must not be retained.
+   *
+   * <p>{@code stream} is consumed sequentially in the calling thread.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0}
+   * @since 5.3
+   */
+  public static void forEachChunk(
+      IntStream stream, int maxSize, ObjIntConsumer<? super int[]> chunkConsumer) {
+    requireNonNull(stream);
+    requireNonNull(chunkConsumer);
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+    IntBuffer buffer = new IntBuffer(maxSize);
+    for (Spliterator.OfInt elements = stream.spliterator(); buffer.fill(elements) > 0; ) {
+      chunkConsumer.accept(buffer.array, buffer.size);
+    }
+  }
+
+  /**
+   * Dices {@code stream} into chunks each with up to {@code maxSize} elements, and passes each
+   * chunk to {@code chunkConsumer} in encounter order, as a buffer along with the chunk's length.
+   *
+   * <p>Unlike {@link #dice(LongStream, int)}, the same buffer is reused for every chunk, so no
+   * allocation is incurred per chunk. Only the first {@code length} elements of the buffer belong
+   * to the chunk. The buffer is only valid during the call and must not be retained.
+   *
+   * <p>{@code stream} is consumed sequentially in the calling thread.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0}
+   * @since 5.3
+   */
+  public static void forEachChunk(
+      LongStream stream, int maxSize, ObjIntConsumer<? super long[]> chunkConsumer) {
+    requireNonNull(stream);
+    requireNonNull(chunkConsumer);
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+    LongBuffer buffer = new LongBuffer(maxSize);
+    for (Spliterator.OfLong elements = stream.spliterator(); buffer.fill(elements) > 0; ) {
+      chunkConsumer.accept(buffer.array, buffer.size);
+    }
+  }
+
+  /**
+   * Dices {@code stream} into chunks each with a total weight of up to {@code maxWeight}, as
+   * computed by {@code weigher}. For example, to batch records into payloads of up to 1MB:
+   *
+   * <pre>{@code
+   * dice(records, 1024 * 1024, Record::serializedSize)
+   *     .forEach(bulkWriter::write);
+   * }</pre>
+   *
+   * <p>A chunk is closed when the next element would push its total weight over {@code
+   * maxWeight}. An element weighing more than {@code maxWeight} by itself forms a single-element
+   * chunk. {@code weigher} is called once per element.
+   *
+   * <p>Like {@link #dice(Stream, int)}, a parallel stream is diced in parallel, each split
+   * independently.
+   *
+   * @throws IllegalArgumentException if {@code maxWeight <= 0}, or (during iteration) if
+   *     {@code weigher} returns a negative weight
+   * @since 5.3
+   */
+  public static <T> Stream<List<T>> dice(
+      Stream<? extends T> stream, long maxWeight, ToLongFunction<? super T> weigher) {
+    requireNonNull(stream);
+    requireNonNull(weigher);
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maxWeight (" + maxWeight + ") must be positive");
+    }
+    return mapBySpliterator(
+        stream,
+        Spliterator.NONNULL,
+        it -> new BoundedDicedSpliterator<T>(
+            it, Integer.MAX_VALUE, maxWeight, weigher, Long.MAX_VALUE, System::nanoTime));
+  }
+
+  /**
+   * Dices {@code stream} into chunks each with up to {@code maxSize} elements, but closes a chunk
+   * early once {@code maxLinger} has passed since its first element arrived. Useful when a slow
+   * stream shouldn't hold back a partially filled chunk for too long.
+   *
+   * <p>Elapsed time is only checked as each element arrives, so a chunk is closed upon the first
+   * element arriving after {@code maxLinger}, or at the end of the stream. If the upstream stalls,
+   * the partial chunk is held until the next element or the end of the stream.
+   *
+   * <p>Like {@link #dice(Stream, int)}, a parallel stream is diced in parallel, each split
+   * independently.
+   *
+   * @throws IllegalArgumentException if {@code maxSize <= 0} or {@code maxLinger} is negative
+   * @since 5.3
+   */
+  public static <T> Stream<List<T>> dice(
+      Stream<? extends T> stream, int maxSize, Duration maxLinger) {
+    return dice(stream, maxSize, maxLinger, System::nanoTime);
+  }
+
+  static <T> Stream<List<T>> dice(
+      Stream<? extends T> stream, int maxSize, Duration maxLinger, LongSupplier ticker) {
+    requireNonNull(stream);
+    requireNonNull(maxLinger);
+    requireNonNull(ticker);
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be positive");
+    }
+    if (maxLinger.isNegative()) {
+      throw new IllegalArgumentException("maxLinger (" + maxLinger + ") must not be negative");
+    }
+    long lingerNanos = saturatedNanos(maxLinger);
+    return mapBySpliterator(
+        stream,
+        Spliterator.NONNULL,
+        it -> new BoundedDicedSpliterator<T>(
+            it, maxSize, Long.MAX_VALUE, e -> 0, lingerNanos, ticker));
+  }
+
   /** @deprecated Use {@code maps.collect(flatteningMaps(toMap())} instead. */
   @Deprecated
   public static <K, V> Collector<Map<K, V>, ?, Map<K, V>> uniqueKeys() {
@@ -406,6 +698,129 @@ public final class MoreStreams {
         }, false);
   }
 
+  /**
+   * Similar to {@link #whileNotNull(Supplier)}, but when run in parallel, pulls elements from
+   * {@code supplier} in batches that start at {@code initialBatchSize} and double upon each split
+   * until {@code maxBatchSize}. For example:
+   *
+   * <pre>{@code
+   * whileNotNull(crawler::nextPage, 1, 64)
+   *     .parallel()
+   *     .map(this::expensiveParse)
+   *     ...
+   * }</pre>
+   *
+   * <p>The stream returned by {@link #whileNotNull(Supplier)} hands off elements to other threads
+   * in batches of 1024, 2048 etc., so expensive per-element work runs on a single thread until the
+   * supplier has produced over a thousand elements. With a small {@code initialBatchSize}, all
+   * cores are put to work from the first few elements, while the growing batches keep the
+   * splitting overhead low for long streams.
+   *
+   * <p>{@code supplier} is only called by one thread at a time, in the order elements are
+   * produced, so it needn't be thread-safe.
+   *
+   * @throws IllegalArgumentException if {@code initialBatchSize <= 0} or {@code maxBatchSize <
+   *     initialBatchSize}
+   * @since 5.3
+   */
+  public static <T> Stream<T> whileNotNull(
+      Supplier<? extends T> supplier, int initialBatchSize, int maxBatchSize) {
+    requireNonNull(supplier);
+    if (initialBatchSize <= 0) {
+      throw new IllegalArgumentException(
+          "initialBatchSize (" + initialBatchSize + ") must be positive");
+    }
+    if (maxBatchSize < initialBatchSize) {
+      throw new IllegalArgumentException(
+          "maxBatchSize (" + maxBatchSize + ") < initialBatchSize (" + initialBatchSize + ")");
+    }
+    return StreamSupport.stream(
+        new BatchingSpliterator<T>(supplier, initialBatchSize, maxBatchSize), false);
+  }
+
+  /**
+   * Returns a sequential stream of the elements from {@code stream}, which is consumed on a
+   * background thread from {@code executor}, up to {@code depth} elements ahead of the returned
+   * stream. For example, to parse the next pages while fetching ahead:
+   *
+   * <pre>{@code
+   * prefetch(whileNotNull(pagedReader::readNextPage), 4, executor)
+   *     .map(this::parse)
+   *     ...
+   * }</pre>
+   *
+   * <p>Without prefetching, a stream only pulls the next element when the downstream asks for it,
+   * so slow I/O upstream and CPU work downstream take turns. With prefetching they overlap, while
+   * the bounded queue keeps memory in check when the producer outpaces the consumer.
+   *
+   * <p>The background task is only started upon the first element being requested. Any exception
+   * thrown by {@code stream} is rethrown in the consuming thread after the preceding elements.
+   * Closing the returned stream (for example with try-with-resources) cancels the background task
+   * and then closes {@code stream}; so does an interruption of the consuming thread, which
+   * results in {@link java.util.concurrent.CancellationException}. Always close the returned
+   * stream if it may not be fully consumed, or the background task may stay blocked until it
+   * notices the cancellation.
+   *
+   * <p>Null elements are allowed.
+   *
+   * @throws IllegalArgumentException if {@code depth <= 0}
+   * @since 5.3
+   */
+  public static <T> Stream<T> prefetch(Stream<? extends T> stream, int depth, Executor executor) {
+    return Prefetcher.prefetch(stream, depth, executor);
+  }
+
+  /**
+   * Returns a lazy stream of the results of applying {@code mapper} to the elements of {@code
+   * stream}, with up to {@code maxConcurrency} mappings running concurrently on {@code executor}.
+   * Results are in the same order as the input elements. For example:
+   *
+   * <pre>{@code
+   * mapConcurrently(userIds, 10, executor, userService::getUser)
+   *     .filter(User::isActive)
+   *     ...
+   * }</pre>
+   *
+   * <p>{@code stream} is pulled in the consuming thread only as fast as results are consumed, so
+   * no more than {@code maxConcurrency} inputs and results are outstanding at any time. Since
+   * each mapping occupies one thread of {@code executor} while running, blocking calls such as
+   * RPCs scale best with an executor that creates cheap threads, like the virtual thread
+   * executor in Java 21.
+   *
+   * <p>If a mapping throws, the outstanding mappings are canceled and the exception is rethrown in
+   * the consuming thread. Closing the returned stream (for example with try-with-resources)
+   * cancels the outstanding mappings and then closes {@code stream}. Interrupting the consuming
+   * thread while it waits results in {@link java.util.concurrent.CancellationException}.
+   *
+   * <p>A slow mapping holds back the results after it. Use {@link #mapConcurrentlyUnordered} if
+   * the order doesn't matter.
+   *
+   * @throws IllegalArgumentException if {@code maxConcurrency <= 0}
+   * @since 5.3
+   */
+  public static <F, T> Stream<T> mapConcurrently(
+      Stream<F> stream,
+      int maxConcurrency,
+      Executor executor,
+      Function<? super F, ? extends T> mapper) {
+    return ConcurrentMapper.inOrder(stream, maxConcurrency, executor, mapper);
+  }
+
+  /**
+   * Similar to {@link #mapConcurrently}, but returns the results in the order the mappings
+   * complete, so that a slow mapping doesn't hold back the results after it.
+   *
+   * @throws IllegalArgumentException if {@code maxConcurrency <= 0}
+   * @since 5.3
+   */
+  public static <F, T> Stream<T> mapConcurrentlyUnordered(
+      Stream<F> stream,
+      int maxConcurrency,
+      Executor executor,
+      Function<? super F, ? extends T> mapper) {
+    return ConcurrentMapper.inCompletionOrder(stream, maxConcurrency, executor, mapper);
+  }
+
   /**
    * Returns a sequential stream with {@code sideEfect} attached on every element.
    *
@@ -486,12 +901,67 @@ public final class MoreStreams {
         Stream.Builder::build);
   }
 
+  private static long saturatedNanos(Duration duration) {
+    try {
+      return duration.toNanos();
+    } catch (ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
   private static <F, T> T splitThenWrap(
       Spliterator<F> from, Function<? super Spliterator<F>, ? extends T> wrapper) {
     Spliterator<F> it = from.trySplit();
     return it == null ? null : wrapper.apply(it);
   }
 
+  private static final class BatchingSpliterator<T> implements Spliterator<T> {
+    private final Supplier<? extends T> supplier;
+    private final int maxBatchSize;
+    private int batchSize;
+    private boolean exhausted;
+
+    BatchingSpliterator(Supplier<? extends T> supplier, int initialBatchSize, int maxBatchSize) {
+      this.supplier = supplier;
+      this.batchSize = initialBatchSize;
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super T> action) {
+      requireNonNull(action);
+      T element = next();
+      if (element == null) return false;
+      action.accept(element);
+      return true;
+    }
+
+    @Override public Spliterator<T> trySplit() {
+      Object[] batch = new Object[batchSize];
+      int size = 0;
+      for (T element; size < batch.length && (element = next()) != null; ) {
+        batch[size++] = element;
+      }
+      if (size == 0) return null;
+      batchSize = (int) Math.min(maxBatchSize, batchSize * 2L);
+      return Spliterators.spliterator(batch, 0, size, Spliterator.NONNULL);
+    }
+
+    @Override public long estimateSize() {
+      return exhausted ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.NONNULL;
+    }
+
+    private T next() {
+      if (exhausted) return null;
+      T element = supplier.get();
+      exhausted = element == null;
+      return element;
+    }
+  }
+
   private static final class DicedSpliterator<T> implements Spliterator<List<T>> {
     private final Spliterator<? extends T> underlying;
     private final int maxSize;
@@ -540,6 +1010,226 @@ public final class MoreStreams {
     }
   }
 
+  /** Dices a primitive spliterator into exactly sized arrays of type {@code A}. */
+  private static final class DicedPrimitiveSpliterator<
+          A, C, S extends Spliterator.OfPrimitive<?, C, S>>
+      implements Spliterator<A> {
+    private final S underlying;
+    private final Supplier<? extends PrimitiveBuffer<A, C>> newBuffer;
+    private final PrimitiveBuffer<A, C> buffer;
+
+    DicedPrimitiveSpliterator(S underlying, Supplier<? extends PrimitiveBuffer<A, C>> newBuffer) {
+      this.underlying = requireNonNull(underlying);
+      this.newBuffer = newBuffer;
+      this.buffer = newBuffer.get();
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super A> action) {
+      requireNonNull(action);
+      if (buffer.fill(underlying) == 0) return false;
+      action.accept(buffer.detach());
+      return true;
+    }
+
+    @Override public Spliterator<A> trySplit() {
+      S split = underlying.trySplit();
+      return split == null ? null : new DicedPrimitiveSpliterator<A, C, S>(split, newBuffer);
+    }
+
+    @Override public long estimateSize() {
+      return estimateChunks(underlying.estimateSize(), buffer.maxSize);
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.NONNULL;
+    }
+  }
+
+  /**
+   * A growable array of primitives, appended to through the primitive consumer {@code C}. Shared
+   * by the {@code int} and {@code long} chunking.
+   */
+  private abstract static class PrimitiveBuffer<A, C> {
+    final int maxSize;
+    private final IntFunction<A> newArray;
+    A array;
+    int size;
+    private int capacity;
+
+    PrimitiveBuffer(IntFunction<A> newArray, int maxSize) {
+      this.newArray = newArray;
+      this.maxSize = maxSize;
+    }
+
+    /** Returns the consumer that appends to this buffer. */
+    abstract C appender();
+
+    /**
+     * Fills the buffer with up to {@code maxSize} elements from {@code elements}, reusing the
+     * array unless it's been {@link #detach detached}. Returns the number of elements filled.
+     */
+    final <S extends Spliterator.OfPrimitive<?, C, S>> int fill(S elements) {
+      if (array == null) {
+        capacity = initialChunkSize(elements.estimateSize(), maxSize);
+        array = newArray.apply(capacity);
+      }
+      size = 0;
+      C append = appender();
+      while (size < maxSize && elements.tryAdvance(append)) {}
+      return size;
+    }
+
+    /** Returns the index to append the next element at, growing the array if it's full. */
+    final int nextIndex() {
+      if (size == capacity) {
+        capacity = grownChunkSize(size, maxSize);
+        array = copyOf(capacity);
+      }
+      return size++;
+    }
+
+    /** Hands over the filled elements as an exactly sized array, which won't be reused. */
+    final A detach() {
+      A result = size == capacity ? array : copyOf(size);
+      array = null;
+      return result;
+    }
+
+    private A copyOf(int length) {
+      A copy = newArray.apply(length);
+      System.arraycopy(array, 0, copy, 0, size);
+      return copy;
+    }
+  }
+
+  private static final class IntBuffer extends PrimitiveBuffer<int[], IntConsumer>
+      implements IntConsumer {
+    IntBuffer(int maxSize) {
+      super(int[]::new, maxSize);
+    }
+
+    @Override IntConsumer appender() {
+      return this;
+    }
+
+    /** Appends {@code value}. Internal use only. */
+    @Override public void accept(int value) {
+      int index = nextIndex();
+      array[index] = value;
+    }
+  }
+
+  private static final class LongBuffer extends PrimitiveBuffer<long[], LongConsumer>
+      implements LongConsumer {
+    LongBuffer(int maxSize) {
+      super(long[]::new, maxSize);
+    }
+
+    @Override LongConsumer appender() {
+      return this;
+    }
+
+    /** Appends {@code value}. Internal use only. */
+    @Override public void accept(long value) {
+      int index = nextIndex();
+      array[index] = value;
+    }
+  }
+
+  /** Same sizing as {@link DicedSpliterator}; chunks of unknown-size streams grow on demand. */
+  private static int initialChunkSize(long estimatedSize, int maxSize) {
+    if (estimatedSize <= maxSize) return (int) estimatedSize;
+    return estimatedSize == Long.MAX_VALUE ? Math.min(maxSize, 8192) : maxSize;
+  }
+
+  private static int grownChunkSize(int size, int maxSize) {
+    return (int) Math.min(maxSize, Math.max(16L, size * 2L));
+  }
+
+  private static long estimateChunks(long size, int maxSize) {
+    return size == Long.MAX_VALUE ? Long.MAX_VALUE : size / maxSize + (size % maxSize == 0 ? 0 : 1);
+  }
+
+  /** Dices by element count, total weight and linger time, whichever bound is reached first. */
+  private static final class BoundedDicedSpliterator<T> implements Spliterator<List<T>> {
+    private final Spliterator<? extends T> underlying;
+    private final int maxSize;
+    private final long maxWeight;
+    private final ToLongFunction<? super T> weigher;
+    private final long maxLingerNanos;
+    private final LongSupplier ticker;
+    private final Consumer<T> next = element -> {
+      pending = element;
+      hasPending = true;
+    };
+    // An element read from underlying that didn't fit in the previous chunk.
+    private T pending;
+    private boolean hasPending;
+    private long pendingWeight = -1;
+
+    BoundedDicedSpliterator(
+        Spliterator<? extends T> underlying,
+        int maxSize,
+        long maxWeight,
+        ToLongFunction<? super T> weigher,
+        long maxLingerNanos,
+        LongSupplier ticker) {
+      this.underlying = requireNonNull(underlying);
+      this.maxSize = maxSize;
+      this.maxWeight = maxWeight;
+      this.weigher = weigher;
+      this.maxLingerNanos = maxLingerNanos;
+      this.ticker = ticker;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super List<T>> action) {
+      requireNonNull(action);
+      List<T> chunk = new ArrayList<>();
+      long weight = 0;
+      long startTime = 0;
+      while (chunk.size() < maxSize && (hasPending || underlying.tryAdvance(next))) {
+        long elementWeight = pendingWeight >= 0 ? pendingWeight : weigher.applyAsLong(pending);
+        if (elementWeight < 0) {
+          throw new IllegalArgumentException(
+              "Negative weight (" + elementWeight + ") for " + pending);
+        }
+        if (!chunk.isEmpty() && elementWeight > maxWeight - weight) {
+          pendingWeight = elementWeight;  // Leave it pending for the next chunk
+          break;
+        }
+        pendingWeight = -1;
+        if (chunk.isEmpty() && maxLingerNanos != Long.MAX_VALUE) {
+          startTime = ticker.getAsLong();
+        }
+        chunk.add(pending);
+        pending = null;
+        hasPending = false;
+        weight += elementWeight;
+        if (maxLingerNanos != Long.MAX_VALUE && ticker.getAsLong() - startTime >= maxLingerNanos) {
+          break;
+        }
+      }
+      if (chunk.isEmpty()) return false;
+      action.accept(chunk);
+      return true;
+    }
+
+    @Override public Spliterator<List<T>> trySplit() {
+      return splitThenWrap(
+          underlying,
+          it -> new BoundedDicedSpliterator<>(
+              it, maxSize, maxWeight, weigher, maxLingerNanos, ticker));
+    }
+
+    @Override public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.NONNULL;
+    }
+  }
+
   private static final class FlattenedSpliterator<T> implements Spliterator<T> {
     private final Spliterator<? extends Stream<? extends T>> blocks;
     private Spliterator<? extends T> currentBlock;
@@ -568,14 +1258,18 @@ public final class MoreStreams {
     }
 
     @Override public Spliterator<T> trySplit() {
-      return splitThenWrap(blocks, it -> {
+      Spliterator<T> split = splitThenWrap(blocks, it -> {
         Spliterator<T> result = new FlattenedSpliterator<>(currentBlock, it);
         currentBlock = null;
         return result;
       });
+      return split == null ? trySplitBlock() : split;
     }
 
     @Override public long estimateSize() {
+      if (blocks.hasCharacteristics(Spliterator.SIZED) && blocks.estimateSize() == 0) {
+        return currentBlock == null ? 0 : currentBlock.estimateSize();
+      }
       return Long.MAX_VALUE;
     }
 
@@ -594,6 +1288,23 @@ public final class MoreStreams {
     private boolean tryAdvanceBlock() {
       return blocks.tryAdvance(nextBlock);
     }
+
+    /**
+     * When no more blocks can be split off, splits within the current block, which is only
+     * attempted for {@link Spliterator#SIZED} blocks that can be split evenly.
+     */
+    private Spliterator<T> trySplitBlock() {
+      if (currentBlock == null && !tryAdvanceBlock()) {
+        return null;
+      }
+      if (!currentBlock.hasCharacteristics(Spliterator.SIZED)) {
+        return null;
+      }
+      Spliterator<? extends T> prefix = currentBlock.trySplit();
+      return prefix == null
+          ? null
+          : new FlattenedSpliterator<>(prefix, Spliterators.<Stream<? extends T>>emptySpliterator());
+    }
   }
 
   private MoreStreams() {}
@@ -0,0 +1,172 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An append-only byte buffer backed by a chain of direct {@link ByteBuffer} arenas, used to keep
+ * spilled pairs out of the Java heap. Arenas start small and double in size up to {@link
+ * #MAX_ARENA_SIZE}, so that many small buffers don't each reserve a full arena.
+ *
+ * <p>The JDK can't free a direct {@code ByteBuffer} on demand; its native memory is only reclaimed
+ * after the buffer is garbage collected. To avoid churning through native memory, full-size
+ * arenas are returned upon {@link #close} to a process-wide pool of up to {@link
+ * #MAX_POOLED_ARENAS} arenas and reused by subsequent buffers. Other arenas are left to the garbage
+ * collector.
+ *
+ * <p>Not thread safe.
+ */
+final class OffHeapBuffer implements AutoCloseable {
+  private static final int MIN_ARENA_SIZE = 1 << 12;
+  static final int MAX_ARENA_SIZE = 1 << 20;
+  /** The number of arenas that grow in size before reaching {@link #MAX_ARENA_SIZE}. */
+  private static final int GROWING_ARENAS =
+      Integer.numberOfTrailingZeros(MAX_ARENA_SIZE / MIN_ARENA_SIZE);
+  /** Total size of the growing arenas. */
+  private static final long GROWING_SIZE = (long) MIN_ARENA_SIZE * ((1 << GROWING_ARENAS) - 1);
+  static final int MAX_POOLED_ARENAS = 64;
+  private static final BlockingQueue<ByteBuffer> pool =
+      new ArrayBlockingQueue<>(MAX_POOLED_ARENAS);
+
+  private final List<ByteBuffer> arenas = new ArrayList<>();
+  private long size = 0;
+
+  /** Returns the number of bytes written so far. */
+  long size() {
+    return size;
+  }
+
+  /** Returns a {@code DataOutputStream} that appends to the end of this buffer. */
+  DataOutputStream output() {
+    return new DataOutputStream(new OutputStream() {
+      @Override public void write(int b) {
+        arenaForWrite().put((byte) b);
+        size++;
+      }
+
+      @Override public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+          ByteBuffer arena = arenaForWrite();
+          int chunk = Math.min(length, arena.remaining());
+          arena.put(bytes, offset, chunk);
+          offset += chunk;
+          length -= chunk;
+          size += chunk;
+        }
+      }
+    });
+  }
+
+  /** Returns a {@code DataInputStream} reading from {@code position} to the end of the buffer. */
+  DataInputStream input(long position) {
+    return new DataInputStream(new InputStream() {
+      private long next = position;
+
+      @Override public int read() {
+        if (next >= size) {
+          return -1;
+        }
+        int index = arenaIndex(next);
+        byte b = arenas.get(index).get((int) (next - arenaStart(index)));
+        next++;
+        return b & 0xFF;
+      }
+
+      @Override public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+          return 0;
+        }
+        if (next >= size) {
+          return -1;
+        }
+        int index = arenaIndex(next);
+        int arenaOffset = (int) (next - arenaStart(index));
+        int chunk =
+            (int) Math.min(Math.min(length, arenaSize(index) - arenaOffset), size - next);
+        ByteBuffer view = arenas.get(index).duplicate();
+        view.position(arenaOffset);
+        view.get(bytes, offset, chunk);
+        next += chunk;
+        return chunk;
+      }
+
+      @Override public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, size - next));
+        next += skipped;
+        return skipped;
+      }
+
+      @Override public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - next);
+      }
+    });
+  }
+
+  /** Recycles the full-size arenas into the shared pool. The buffer must no longer be read. */
+  @Override public void close() {
+    for (ByteBuffer arena : arenas) {
+      if (arena.capacity() == MAX_ARENA_SIZE) {
+        arena.clear();
+        if (!pool.offer(arena)) {
+          break;
+        }
+      }
+    }
+    arenas.clear();
+    size = 0;
+  }
+
+  /** Returns the number of full-size arenas currently pooled for reuse. */
+  static int pooledArenas() {
+    return pool.size();
+  }
+
+  private ByteBuffer arenaForWrite() {
+    int last = arenas.size() - 1;
+    if (last < 0 || !arenas.get(last).hasRemaining()) {
+      last++;
+      int arenaSize = arenaSize(last);
+      ByteBuffer pooled = arenaSize == MAX_ARENA_SIZE ? pool.poll() : null;
+      arenas.add(pooled == null ? ByteBuffer.allocateDirect(arenaSize) : pooled);
+    }
+    return arenas.get(last);
+  }
+
+  private static int arenaSize(int index) {
+    return index < GROWING_ARENAS ? MIN_ARENA_SIZE << index : MAX_ARENA_SIZE;
+  }
+
+  private static long arenaStart(int index) {
+    return index < GROWING_ARENAS
+        ? (long) MIN_ARENA_SIZE * ((1 << index) - 1)
+        : GROWING_SIZE + (long) (index - GROWING_ARENAS) * MAX_ARENA_SIZE;
+  }
+
+  private static int arenaIndex(long position) {
+    if (position < GROWING_SIZE) {
+      return 31 - Integer.numberOfLeadingZeros((int) (position / MIN_ARENA_SIZE) + 1);
+    }
+    return GROWING_ARENAS + (int) ((position - GROWING_SIZE) / MAX_ARENA_SIZE);
+  }
+}
@@ -0,0 +1,186 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.mu.util.stream.Handoff.Failure;
+
+/**
+ * Runs the upstream of {@link MoreStreams#prefetch} on a background executor, handing elements
+ * over to the consumer through a bounded queue.
+ *
+ * <p>The upstream isn't thread safe, so it's closed by whichever thread touches it last: the
+ * producer if it's still running when the stream is closed, or the closing thread otherwise.
+ */
+final class Prefetcher<T> implements Spliterator<T>, Consumer<T>, Runnable {
+  private static final Object END = new Object();
+  private static final Object NULL = new Object();
+  // How often a producer blocked on a full queue checks for cancellation.
+  private static final long CANCELLATION_CHECK_MILLIS = 100;
+  private static final int IDLE = 0;
+  private static final int PRODUCING = 1;
+  private static final int PRODUCED = 2;
+  private static final int CLOSED = 3;
+
+  private final Stream<? extends T> upstream;
+  private final Executor executor;
+  private final BlockingQueue<Object> queue;
+  private volatile boolean cancelled;
+  private final AtomicInteger state = new AtomicInteger(IDLE);
+  private FutureTask<?> producer;
+  private boolean finished;
+
+  private Prefetcher(Stream<? extends T> upstream, int depth, Executor executor) {
+    this.upstream = upstream;
+    this.executor = executor;
+    this.queue = new ArrayBlockingQueue<>(depth);
+  }
+
+  static <T> Stream<T> prefetch(Stream<? extends T> upstream, int depth, Executor executor) {
+    requireNonNull(upstream);
+    requireNonNull(executor);
+    if (depth <= 0) {
+      throw new IllegalArgumentException("depth (" + depth + ") must be positive");
+    }
+    Prefetcher<T> prefetcher = new Prefetcher<>(upstream, depth, executor);
+    return StreamSupport.stream(prefetcher, false).onClose(prefetcher::close);
+  }
+
+  @Override public boolean tryAdvance(Consumer<? super T> action) {
+    requireNonNull(action);
+    if (finished) {
+      return false;
+    }
+    if (producer == null) {
+      producer = new FutureTask<>(this, null);
+      executor.execute(producer);
+    }
+    Object next;
+    try {
+      next = queue.take();
+    } catch (InterruptedException e) {
+      cancel();
+      throw Handoff.interrupted(e, "prefetched element");
+    }
+    if (next == END) {
+      finished = true;
+      return false;
+    }
+    if (next instanceof Failure) {
+      finished = true;
+      throw ((Failure) next).propagate();
+    }
+    @SuppressWarnings("unchecked") // Only T and the private markers are ever enqueued.
+    T element = next == NULL ? null : (T) next;
+    action.accept(element);
+    return true;
+  }
+
+  @Override public Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override public int characteristics() {
+    return Spliterator.ORDERED;
+  }
+
+  /** Runs in the background, pulling from upstream until it's exhausted, failed or cancelled. */
+  @Override public void run() {
+    if (!state.compareAndSet(IDLE, PRODUCING)) {
+      return;  // Closed before we got to start.
+    }
+    try {
+      Spliterator<? extends T> elements = upstream.spliterator();
+      while (!cancelled && elements.tryAdvance(this)) {}
+      enqueue(END);
+    } catch (Cancelled e) {
+      // The consumer is gone. Nothing to report to.
+    } catch (Throwable e) {
+      try {
+        enqueue(new Failure(e));
+      } catch (Cancelled cancelled) {
+        // The consumer is gone. Nothing to report to.
+      }
+    } finally {
+      if (!state.compareAndSet(PRODUCING, PRODUCED)) {
+        upstream.close();  // The stream was closed while we were still pulling from upstream.
+      }
+    }
+  }
+
+  /** Called by the producer for each upstream element. */
+  @Override public void accept(T element) {
+    enqueue(element == null ? NULL : element);
+  }
+
+  private void enqueue(Object item) {
+    try {
+      while (!queue.offer(item, CANCELLATION_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (cancelled) {
+          throw new Cancelled();
+        }
+      }
+    } catch (InterruptedException e) {
+      if (cancelled) {
+        throw new Cancelled();
+      }
+      // Interrupted by someone else, like executor.shutdownNow(). Fail the consumer.
+      CancellationException cancellation = new CancellationException("Prefetching interrupted");
+      cancellation.initCause(e);
+      throw cancellation;
+    }
+  }
+
+  private void cancel() {
+    cancelled = true;
+    if (producer != null) {
+      producer.cancel(true);
+    }
+    queue.clear();  // Unblock the producer if it's waiting for room.
+  }
+
+  /** Cancels the producer, and closes the upstream unless the producer is still using it. */
+  private void close() {
+    cancel();
+    if (state.getAndSet(CLOSED) != PRODUCING) {
+      upstream.close();
+    }
+  }
+
+  /** Unwinds the producer when the consumer has gone away. */
+  @SuppressWarnings("serial")
+  private static final class Cancelled extends RuntimeException {
+    Cancelled() {
+      super(null, null, false, false);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A KLL quantile sketch (Karnin, Lang and Liberty). Values are kept in a hierarchy of
+ * "compactors" with geometrically shrinking capacities. When a compactor fills up, it's sorted and
+ * every other value is promoted to the next level with doubled weight. The memory footprint is
+ * {@code O(K)} regardless of the input size, and sketches of parallel chunks can be merged.
+ */
+final class QuantileSketch {
+  private static final int K = 200;
+
+  private final List<Compactor> levels = new ArrayList<>();
+  private int size = 0;
+  private int capacity;
+  private int coinFlips = 0x9E3779B9;
+
+  QuantileSketch() {
+    levels.add(new Compactor());
+    capacity = capacity(0);
+  }
+
+  void add(double value) {
+    levels.get(0).add(value);
+    size++;
+    if (size >= capacity) {
+      compress();
+    }
+  }
+
+  QuantileSketch merge(QuantileSketch that) {
+    while (levels.size() < that.levels.size()) {
+      levels.add(new Compactor());
+    }
+    for (int h = 0; h < that.levels.size(); h++) {
+      Compactor from = that.levels.get(h);
+      for (int i = 0; i < from.size; i++) {
+        levels.get(h).add(from.items[i]);
+      }
+    }
+    size += that.size;
+    capacity = totalCapacity();
+    while (size >= capacity) {
+      compress();
+    }
+    return this;
+  }
+
+  /**
+   * Returns a function that maps a rank in {@code [0, 1]} to the estimated value at that rank.
+   * Returns {@code NaN} for all ranks if no value was added.
+   */
+  DoubleUnaryOperator quantiles() {
+    double[] values = new double[size];
+    long[] weights = new long[size];
+    int n = 0;
+    for (int h = 0; h < levels.size(); h++) {
+      Compactor level = levels.get(h);
+      for (int i = 0; i < level.size; i++, n++) {
+        values[n] = level.items[i];
+        weights[n] = 1L << h;
+      }
+    }
+    sortByValues(values, weights);
+    long[] cumulative = new long[n];
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      total += weights[i];
+      cumulative[i] = total;
+    }
+    long totalWeight = total;
+    return rank -> {
+      if (!(rank >= 0 && rank <= 1)) {
+        throw new IllegalArgumentException("rank (" + rank + ") must be in [0, 1]");
+      }
+      if (totalWeight == 0) {
+        return Double.NaN;
+      }
+      long target = Math.max(1, (long) Math.ceil(rank * totalWeight));
+      int i = Arrays.binarySearch(cumulative, target);
+      return values[i >= 0 ? i : -i - 1];
+    };
+  }
+
+  private void compress() {
+    for (int h = 0; h < levels.size(); h++) {
+      Compactor level = levels.get(h);
+      if (level.size >= capacity(h)) {
+        if (h + 1 == levels.size()) {
+          levels.add(new Compactor());
+        }
+        size -= level.compactInto(levels.get(h + 1), nextCoinFlip());
+        capacity = totalCapacity();
+        return;
+      }
+    }
+  }
+
+  private int capacity(int level) {
+    int depth = levels.size() - 1 - level;
+    return Math.max(2, (int) Math.ceil(K * Math.pow(2.0 / 3, depth)));
+  }
+
+  private int totalCapacity() {
+    int total = 0;
+    for (int h = 0; h < levels.size(); h++) {
+      total += capacity(h);
+    }
+    return total;
+  }
+
+  /** Deterministic xorshift so that results are reproducible. */
+  private int nextCoinFlip() {
+    coinFlips ^= coinFlips << 13;
+    coinFlips ^= coinFlips >>> 17;
+    coinFlips ^= coinFlips << 5;
+    return coinFlips & 1;
+  }
+
+  private static void sortByValues(double[] values, long[] weights) {
+    Integer[] order = new Integer[values.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (i, j) -> Double.compare(values[i], values[j]));
+    double[] sortedValues = values.clone();
+    long[] sortedWeights = weights.clone();
+    for (int i = 0; i < order.length; i++) {
+      values[i] = sortedValues[order[i]];
+      weights[i] = sortedWeights[order[i]];
+    }
+  }
+
+  private static final class Compactor {
+    double[] items = new double[8];
+    int size = 0;
+
+    void add(double value) {
+      if (size == items.length) {
+        items = Arrays.copyOf(items, size * 2);
+      }
+      items[size++] = value;
+    }
+
+    /**
+     * Promotes every other value, starting from {@code offset}, into {@code next}. Returns the
+     * net number of values removed from the sketch.
+     */
+    int compactInto(Compactor next, int offset) {
+      Arrays.sort(items, 0, size);
+      int pairs = size / 2;
+      for (int i = 0; i < pairs; i++) {
+        next.add(items[2 * i + offset]);
+      }
+      if (size % 2 == 1) {
+        items[0] = items[size - 1];
+        size = 1;
+      } else {
+        size = 0;
+      }
+      return pairs;
+    }
+  }
+}
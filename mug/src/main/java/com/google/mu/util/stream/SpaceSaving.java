@@ -0,0 +1,145 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.BiStream.kv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Space-Saving heavy-hitter summary (Metwally et al.), with at most {@code capacity} counters
+ * kept in an indexed min-heap so that both incrementing and evicting take {@code O(log capacity)}.
+ *
+ * <p>After {@code N} total weight is added, every key whose true weight exceeds {@code N / capacity}
+ * is guaranteed to be retained, and each estimated count overestimates the true count by no more
+ * than {@code N / capacity}. Summaries are mergeable as described by Agarwal et al.
+ */
+final class SpaceSaving<K> {
+  private final int capacity;
+  private final Map<K, Integer> index;
+  private Object[] keys;
+  private long[] counts;
+  private int size = 0;
+
+  SpaceSaving(int capacity) {
+    this.capacity = capacity;
+    int initial = Math.min(capacity, 1024);
+    this.index = new HashMap<>(initial * 2);
+    this.keys = new Object[initial];
+    this.counts = new long[initial];
+  }
+
+  void add(K key, long weight) {
+    if (weight < 0) {
+      throw new IllegalArgumentException("Negative weight " + weight + " for " + key);
+    }
+    Integer i = index.get(key);
+    if (i != null) {
+      counts[i] += weight;
+      siftDown(i);
+    } else if (size < capacity) {
+      if (size == keys.length) {
+        int newLength = (int) Math.min(capacity, 2L * size);
+        keys = Arrays.copyOf(keys, newLength);
+        counts = Arrays.copyOf(counts, newLength);
+      }
+      keys[size] = key;
+      counts[size] = weight;
+      index.put(key, size);
+      siftUp(size++);
+    } else {
+      // Evict the least counted key; the newcomer inherits its count as the error bound.
+      index.remove(keys[0]);
+      keys[0] = key;
+      counts[0] += weight;
+      index.put(key, 0);
+      siftDown(0);
+    }
+  }
+
+  SpaceSaving<K> merge(SpaceSaving<K> that) {
+    // A key absent from a full summary may have had up to that summary's minimum count.
+    long thisMin = size < capacity ? 0 : counts[0];
+    long thatMin = that.size < that.capacity ? 0 : that.counts[0];
+    Map<K, Long> merged = new HashMap<>(2 * (size + that.size));
+    for (int i = 0; i < size; i++) {
+      merged.put(key(i), counts[i] + thatMin);
+    }
+    for (int i = 0; i < that.size; i++) {
+      K key = that.key(i);
+      Long mine = merged.get(key);
+      merged.put(key, mine == null ? that.counts[i] + thisMin : mine - thatMin + that.counts[i]);
+    }
+    SpaceSaving<K> result = new SpaceSaving<>(capacity);
+    merged.entrySet().stream()
+        .sorted(Map.Entry.<K, Long>comparingByValue().reversed())
+        .limit(capacity)
+        .forEach(e -> result.add(e.getKey(), e.getValue()));
+    return result;
+  }
+
+  /** Returns the retained keys with their estimated counts, most frequent first. */
+  BiStream<K, Long> mostFrequentFirst() {
+    List<Map.Entry<K, Long>> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(kv(key(i), counts[i]));
+    }
+    result.sort(Map.Entry.<K, Long>comparingByValue(Comparator.reverseOrder()));
+    return BiStream.from(result);
+  }
+
+  @SuppressWarnings("unchecked")  // Only K is ever stored in keys.
+  private K key(int i) {
+    return (K) keys[i];
+  }
+
+  private void siftUp(int i) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (counts[parent] <= counts[i]) return;
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < size && counts[left] < counts[smallest]) smallest = left;
+      if (right < size && counts[right] < counts[smallest]) smallest = right;
+      if (smallest == i) return;
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  private void swap(int i, int j) {
+    Object k = keys[i];
+    keys[i] = keys[j];
+    keys[j] = k;
+    long c = counts[i];
+    counts[i] = counts[j];
+    counts[j] = c;
+    index.put(key(i), i);
+    index.put(key(j), j);
+  }
+}
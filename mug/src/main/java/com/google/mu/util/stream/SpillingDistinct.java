@@ -0,0 +1,201 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.SpillingSorter.readPair;
+import static com.google.mu.util.stream.SpillingSorter.writePair;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+/**
+ * Removes duplicate pairs with bounded heap usage. All pairs are first serialized to an {@link
+ * OffHeapBuffer} along with their hash codes. If there are more than {@code maxInMemory} pairs, a
+ * single pass then copies them into one buffer per hash partition, with each partition small enough
+ * to de-duplicate in an on-heap {@code HashSet}. The first occurrences are recorded in a {@link
+ * BitSet} so that the final scan can emit them in encounter order.
+ *
+ * <p>The log is thus read at most twice regardless of input size. Heap usage is one partition
+ * of up to about {@code maxInMemory} pairs plus one bit per pair. Up to {@code Integer.MAX_VALUE}
+ * pairs are supported.
+ */
+final class SpillingDistinct<K, V> {
+  private final int maxInMemory;
+  private final Codec<K> keyCodec;
+  private final Codec<V> valueCodec;
+  private final OffHeapBuffer log = new OffHeapBuffer();
+  private int count = 0;
+
+  private SpillingDistinct(int maxInMemory, Codec<K> keyCodec, Codec<V> valueCodec) {
+    this.maxInMemory = maxInMemory;
+    this.keyCodec = requireNonNull(keyCodec);
+    this.valueCodec = requireNonNull(valueCodec);
+  }
+
+  static <K, V> BiStream<K, V> distinct(
+      BiStream<K, V> stream, int maxInMemory, Codec<K> keyCodec, Codec<V> valueCodec) {
+    requireNonNull(stream);
+    SpillingSorter.checkMaxInMemory(maxInMemory);
+    SpillingDistinct<K, V> distinct = new SpillingDistinct<>(maxInMemory, keyCodec, valueCodec);
+    return BiStream.fromEntries(
+        StreamSupport.stream(() -> distinct.run(stream), Spliterator.ORDERED, false)
+            .onClose(distinct.log::close)
+            .onClose(stream::close));
+  }
+
+  private Spliterator<Map.Entry<K, V>> run(BiStream<K, V> stream) {
+    try {
+      write(stream);
+      BitSet firsts = findFirstOccurrences();
+      return emit(firsts);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Writes each pair as {@code hash, length, pair}, so that other partitions can be skipped. */
+  private void write(BiStream<K, V> stream) {
+    DataOutputStream out = log.output();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream pair = new DataOutputStream(bytes);
+    stream.forEachOrdered((k, v) -> {
+      try {
+        bytes.reset();
+        writePair(k, v, keyCodec, valueCodec, pair);
+        out.writeInt(hash(k, v));
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (++count < 0) {
+        throw new IllegalStateException("Too many pairs to dedup");
+      }
+    });
+  }
+
+  private BitSet findFirstOccurrences() throws IOException {
+    BitSet firsts = new BitSet(count);
+    int partitions = count / maxInMemory + 1;
+    if (partitions == 1) {
+      Set<Map.Entry<K, V>> seen = new HashSet<>();
+      DataInputStream in = log.input(0);
+      for (int i = 0; i < count; i++) {
+        in.readInt();
+        in.readInt();
+        if (seen.add(readPair(keyCodec, valueCodec, in))) {
+          firsts.set(i);
+        }
+      }
+      return firsts;
+    }
+    OffHeapBuffer[] buffers = new OffHeapBuffer[partitions];
+    try {
+      int[] sizes = partition(buffers);
+      for (int p = 0; p < partitions; p++) {
+        Set<Map.Entry<K, V>> seen = new HashSet<>();
+        DataInputStream in = buffers[p].input(0);
+        for (int i = 0; i < sizes[p]; i++) {
+          int index = in.readInt();
+          if (seen.add(readPair(keyCodec, valueCodec, in))) {
+            firsts.set(index);
+          }
+        }
+        buffers[p].close();
+      }
+    } finally {
+      for (OffHeapBuffer buffer : buffers) {
+        if (buffer != null) {
+          buffer.close();
+        }
+      }
+    }
+    return firsts;
+  }
+
+  /**
+   * Copies each pair in the log, prefixed by its index, into the buffer of its hash partition in a
+   * single pass. Returns the number of pairs in each partition.
+   */
+  private int[] partition(OffHeapBuffer[] buffers) throws IOException {
+    int partitions = buffers.length;
+    DataOutputStream[] outs = new DataOutputStream[partitions];
+    for (int p = 0; p < partitions; p++) {
+      buffers[p] = new OffHeapBuffer();
+      outs[p] = buffers[p].output();
+    }
+    int[] sizes = new int[partitions];
+    byte[] bytes = new byte[64];
+    DataInputStream in = log.input(0);
+    for (int i = 0; i < count; i++) {
+      int p = Math.floorMod(in.readInt(), partitions);
+      int length = in.readInt();
+      if (length > bytes.length) {
+        bytes = new byte[Math.max(length, bytes.length * 2)];
+      }
+      in.readFully(bytes, 0, length);
+      outs[p].writeInt(i);
+      outs[p].write(bytes, 0, length);
+      sizes[p]++;
+    }
+    return sizes;
+  }
+
+  private Spliterator<Map.Entry<K, V>> emit(BitSet firsts) {
+    DataInputStream in = log.input(0);
+    return new AbstractSpliterator<Map.Entry<K, V>>(firsts.cardinality(), Spliterator.ORDERED) {
+      private int index = 0;
+
+      @Override public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+        try {
+          for (; index < count; index++) {
+            in.readInt();
+            int length = in.readInt();
+            if (firsts.get(index)) {
+              index++;
+              action.accept(readPair(keyCodec, valueCodec, in));
+              return true;
+            }
+            in.skipBytes(length);
+          }
+          log.close();
+          return false;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /** Spreads the hash codes so that partitioning by modulo is balanced. */
+  private static int hash(Object key, Object value) {
+    int h = Objects.hashCode(key) * 31 + Objects.hashCode(value);
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
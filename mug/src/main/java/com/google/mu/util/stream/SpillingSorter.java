@@ -0,0 +1,420 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.BiStream.kv;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sorts pairs that may not fit in memory. Up to {@code maxInMemory} pairs are buffered at a time;
+ * each full buffer is sorted and written as a "run", either to a temp file or to an {@link
+ * OffHeapBuffer}. The runs are then lazily k-way merged, with only the head pair of each run held
+ * on the heap. To bound the number of simultaneously open files, no more than {@code maxFanIn}
+ * temp file runs are merged at a time: if there are more, groups of adjacent runs are first merged
+ * into longer runs, as many passes as needed.
+ *
+ * <p>Like {@link java.util.stream.Stream#sorted}, the sort is stable.
+ */
+final class SpillingSorter<K, V> implements AutoCloseable {
+  static final int DEFAULT_MAX_FAN_IN = 64;
+
+  private final Comparator<? super Map.Entry<K, V>> ordering;
+  private final int maxInMemory;
+  private final Codec<K> keyCodec;
+  private final Codec<V> valueCodec;
+  private final int maxFanIn;
+  private final Path tempDir;
+  private List<Run> runs = new ArrayList<>();
+  private final List<Path> files = new ArrayList<>();
+  private final OffHeapBuffer offHeap;
+  private long size = 0;
+
+  private SpillingSorter(
+      Comparator<? super Map.Entry<K, V>> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec,
+      int maxFanIn,
+      Path tempDir,
+      OffHeapBuffer offHeap) {
+    this.ordering = requireNonNull(ordering);
+    this.maxInMemory = maxInMemory;
+    this.keyCodec = requireNonNull(keyCodec);
+    this.valueCodec = requireNonNull(valueCodec);
+    this.maxFanIn = maxFanIn;
+    this.tempDir = tempDir;
+    this.offHeap = offHeap;
+  }
+
+  /** Sorts {@code stream}, spilling runs to temp files. */
+  static <K, V> BiStream<K, V> sort(
+      BiStream<K, V> stream,
+      Comparator<? super Map.Entry<K, V>> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec) {
+    return sort(
+        stream, ordering, maxInMemory, keyCodec, valueCodec, DEFAULT_MAX_FAN_IN, null, null);
+  }
+
+  /**
+   * Sorts {@code stream}, spilling runs to temp files created under {@code tempDir}, and merging
+   * no more than {@code maxFanIn} runs at a time.
+   */
+  static <K, V> BiStream<K, V> sort(
+      BiStream<K, V> stream,
+      Comparator<? super Map.Entry<K, V>> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec,
+      int maxFanIn,
+      Path tempDir) {
+    return sort(
+        stream, ordering, maxInMemory, keyCodec, valueCodec, maxFanIn, requireNonNull(tempDir),
+        null);
+  }
+
+  /** Sorts {@code stream}, spilling runs to off-heap memory. */
+  static <K, V> BiStream<K, V> sortOffHeap(
+      BiStream<K, V> stream,
+      Comparator<? super Map.Entry<K, V>> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec) {
+    return sort(
+        stream, ordering, maxInMemory, keyCodec, valueCodec, DEFAULT_MAX_FAN_IN, null,
+        new OffHeapBuffer());
+  }
+
+  /** Throws {@link IllegalArgumentException} if {@code maxInMemory} isn't positive. */
+  static void checkMaxInMemory(int maxInMemory) {
+    if (maxInMemory <= 0) {
+      throw new IllegalArgumentException("maxInMemory (" + maxInMemory + ") must be positive");
+    }
+  }
+
+  private static <K, V> BiStream<K, V> sort(
+      BiStream<K, V> stream,
+      Comparator<? super Map.Entry<K, V>> ordering,
+      int maxInMemory,
+      Codec<K> keyCodec,
+      Codec<V> valueCodec,
+      int maxFanIn,
+      Path tempDir,
+      OffHeapBuffer offHeap) {
+    requireNonNull(stream);
+    checkMaxInMemory(maxInMemory);
+    if (maxFanIn < 2) {
+      throw new IllegalArgumentException("maxFanIn (" + maxFanIn + ") must be at least 2");
+    }
+    SpillingSorter<K, V> sorter = new SpillingSorter<>(
+        ordering, maxInMemory, keyCodec, valueCodec, maxFanIn, tempDir, offHeap);
+    return BiStream.fromEntries(
+        StreamSupport.stream(() -> sorter.sort(stream), Spliterator.ORDERED, false)
+            .onClose(sorter::close)
+            .onClose(stream::close));
+  }
+
+  /** Writes {@code key} and {@code value}, either of which can be null. */
+  static <K, V> void writePair(
+      K key, V value, Codec<? super K> keyCodec, Codec<? super V> valueCodec, DataOutput out)
+      throws IOException {
+    out.writeByte((key == null ? 0 : 1) | (value == null ? 0 : 2));
+    if (key != null) {
+      keyCodec.encode(key, out);
+    }
+    if (value != null) {
+      valueCodec.encode(value, out);
+    }
+  }
+
+  /** Reads back a pair written by {@link #writePair}. */
+  static <K, V> Map.Entry<K, V> readPair(
+      Codec<? extends K> keyCodec, Codec<? extends V> valueCodec, DataInput in)
+      throws IOException {
+    int presence = in.readByte();
+    K key = (presence & 1) == 0 ? null : keyCodec.decode(in);
+    V value = (presence & 2) == 0 ? null : valueCodec.decode(in);
+    return kv(key, value);
+  }
+
+  @Override public void close() {
+    UncheckedIOException failure = null;
+    for (Run run : runs) {
+      try {
+        run.close();
+      } catch (IOException e) {
+        failure = new UncheckedIOException(e);
+      }
+    }
+    runs.clear();
+    for (Path file : files) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        failure = new UncheckedIOException(e);
+      }
+    }
+    files.clear();
+    if (offHeap != null) {
+      offHeap.close();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private Spliterator<Map.Entry<K, V>> sort(BiStream<K, V> stream) {
+    List<Map.Entry<K, V>> buffer = new ArrayList<>(Math.min(maxInMemory, 8192));
+    stream.forEachOrdered((k, v) -> {
+      buffer.add(kv(k, v));
+      size++;
+      if (buffer.size() >= maxInMemory) {
+        spill(buffer);
+      }
+    });
+    buffer.sort(ordering);
+    if (runs.isEmpty()) {
+      return buffer.spliterator();
+    }
+    // Off-heap runs don't hold file handles, so they don't need to be merged in passes.
+    // Leave room for the last partial buffer, which doesn't need to hit the disk.
+    while (offHeap == null && runs.size() >= maxFanIn) {
+      mergePass();
+    }
+    runs.add(new InMemoryRun(runs.size(), buffer.iterator()));
+    return merge();
+  }
+
+  private void spill(List<Map.Entry<K, V>> buffer) {
+    buffer.sort(ordering);
+    runs.add(write(runs.size(), buffer.iterator()));
+    buffer.clear();
+  }
+
+  /**
+   * Merges each group of up to {@code maxFanIn} adjacent runs into a single run. Since only
+   * adjacent runs are merged, and ties are broken by run index, the sort remains stable.
+   */
+  private void mergePass() {
+    List<Run> merged = new ArrayList<>((runs.size() + maxFanIn - 1) / maxFanIn);
+    for (int i = 0; i < runs.size(); i += maxFanIn) {
+      List<Run> group = runs.subList(i, Math.min(i + maxFanIn, runs.size()));
+      if (group.size() == 1) {
+        Run run = group.get(0);
+        run.index = merged.size();
+        merged.add(run);
+        continue;
+      }
+      PriorityQueue<Run> queue = newQueue(group);
+      Run output = write(merged.size(), new Iterator<Map.Entry<K, V>>() {
+        @Override public boolean hasNext() {
+          return !queue.isEmpty();
+        }
+
+        @Override public Map.Entry<K, V> next() {
+          return poll(queue);
+        }
+      });
+      for (Run run : group) {
+        discard(run);
+      }
+      merged.add(output);
+    }
+    runs = merged;
+  }
+
+  /** Writes {@code pairs} as a new run, either to a temp file or off-heap. */
+  private SerializedRun write(int index, Iterator<Map.Entry<K, V>> pairs) {
+    try {
+      if (offHeap != null) {
+        long start = offHeap.size();
+        long count = writeAll(pairs, offHeap.output());
+        return new SerializedRun(index, () -> offHeap.input(start), count, null);
+      }
+      Path file = tempDir == null
+          ? Files.createTempFile("mug-sort-", ".run")
+          : Files.createTempFile(tempDir, "mug-sort-", ".run");
+      files.add(file);
+      long count;
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+        count = writeAll(pairs, out);
+      }
+      return new SerializedRun(
+          index,
+          () -> new DataInputStream(new BufferedInputStream(Files.newInputStream(file))),
+          count,
+          file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Closes {@code run} and deletes its file, if any, once it's been merged into another run. */
+  private void discard(Run run) {
+    try {
+      run.close();
+      if (run.file != null) {
+        Files.deleteIfExists(run.file);
+        files.remove(run.file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private long writeAll(Iterator<Map.Entry<K, V>> pairs, DataOutput out) throws IOException {
+    long count = 0;
+    while (pairs.hasNext()) {
+      Map.Entry<K, V> entry = pairs.next();
+      writePair(entry.getKey(), entry.getValue(), keyCodec, valueCodec, out);
+      count++;
+    }
+    return count;
+  }
+
+  private PriorityQueue<Run> newQueue(List<Run> toMerge) {
+    PriorityQueue<Run> queue = new PriorityQueue<>(toMerge.size(), (r1, r2) -> {
+      int result = ordering.compare(r1.head, r2.head);
+      return result == 0 ? Integer.compare(r1.index, r2.index) : result;
+    });
+    for (Run run : toMerge) {
+      if (run.advance()) {
+        queue.add(run);
+      }
+    }
+    return queue;
+  }
+
+  /** Removes and returns the smallest head pair from the non-empty {@code queue}. */
+  private Map.Entry<K, V> poll(PriorityQueue<Run> queue) {
+    Run run = queue.poll();
+    Map.Entry<K, V> next = run.head;
+    if (run.advance()) {
+      queue.add(run);
+    }
+    return next;
+  }
+
+  private Spliterator<Map.Entry<K, V>> merge() {
+    PriorityQueue<Run> queue = newQueue(runs);
+    return new AbstractSpliterator<Map.Entry<K, V>>(size, Spliterator.ORDERED) {
+      @Override public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+        if (queue.isEmpty()) {
+          close();
+          return false;
+        }
+        action.accept(poll(queue));
+        return true;
+      }
+    };
+  }
+
+  private abstract class Run {
+    int index;
+    Map.Entry<K, V> head;
+    /** The file that backs this run, or null if it isn't backed by a file. */
+    Path file;
+
+    Run(int index) {
+      this.index = index;
+    }
+
+    /** Reads the next pair into {@link #head}, or returns false if the run is exhausted. */
+    abstract boolean advance();
+
+    void close() throws IOException {}
+  }
+
+  private final class InMemoryRun extends Run {
+    private final Iterator<Map.Entry<K, V>> iterator;
+
+    InMemoryRun(int index, Iterator<Map.Entry<K, V>> iterator) {
+      super(index);
+      this.iterator = iterator;
+    }
+
+    @Override boolean advance() {
+      if (!iterator.hasNext()) return false;
+      head = iterator.next();
+      return true;
+    }
+  }
+
+  private interface Opener {
+    DataInputStream open() throws IOException;
+  }
+
+  /** A run of pairs serialized to a file or off-heap memory. */
+  private final class SerializedRun extends Run {
+    private final Opener opener;
+    private long remaining;
+    private DataInputStream in;
+
+    SerializedRun(int index, Opener opener, long size, Path file) {
+      super(index);
+      this.opener = opener;
+      this.remaining = size;
+      this.file = file;
+    }
+
+    @Override boolean advance() {
+      try {
+        if (remaining == 0) {
+          close();
+          return false;
+        }
+        if (in == null) {
+          in = opener.open();
+        }
+        head = readPair(keyCodec, valueCodec, in);
+        remaining--;
+        return true;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override void close() throws IOException {
+      head = null;
+      if (in != null) {
+        in.close();
+        in = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.BiStream.kv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.google.mu.function.BiComparator;
+
+/**
+ * Keeps the {@code k} greatest pairs seen so far in a bounded min-heap, so that selecting the top
+ * pairs out of {@code n} takes {@code O(n log k)} time and {@code O(k)} space.
+ */
+final class TopK<K, V> {
+  private final int k;
+  private final BiComparator<? super K, ? super V> comparator;
+  private final PriorityQueue<Map.Entry<K, V>> heap;
+
+  TopK(int k, BiComparator<? super K, ? super V> comparator) {
+    this.k = k;
+    this.comparator = comparator;
+    this.heap = new PriorityQueue<>(
+        Math.min(k, 1024), comparator.asComparator(Map.Entry::getKey, Map.Entry::getValue));
+  }
+
+  void add(K key, V value) {
+    if (heap.size() < k) {
+      heap.add(kv(key, value));
+      return;
+    }
+    Map.Entry<K, V> least = heap.peek();
+    // Only allocate the entry when it makes the cut.
+    if (comparator.compare(key, value, least.getKey(), least.getValue()) > 0) {
+      heap.poll();
+      heap.add(kv(key, value));
+    }
+  }
+
+  TopK<K, V> addAll(TopK<K, V> that) {
+    for (Map.Entry<K, V> entry : that.heap) {
+      add(entry.getKey(), entry.getValue());
+    }
+    return this;
+  }
+
+  /** Returns the retained pairs, greatest first. */
+  BiStream<K, V> greatestFirst() {
+    List<Map.Entry<K, V>> result = new ArrayList<>(heap.size());
+    while (!heap.isEmpty()) {
+      result.add(heap.poll());
+    }
+    Collections.reverse(result);
+    return BiStream.from(result);
+  }
+}
@@ -0,0 +1,84 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+/**
+ * A half-open time window {@code [start, end)}, as produced by windowing operators such as
+ * {@link BiStream#tumblingWindowsFrom}, {@link BiStream#slidingWindowsFrom} and
+ * {@link BiStream#sessionWindowsFrom}.
+ *
+ * <p>The time unit is up to the caller; it's whatever the timestamp function returns.
+ *
+ * @since 5.3
+ */
+public final class Window implements Comparable<Window> {
+  private final long start;
+  private final long end;
+
+  private Window(long start, long end) {
+    if (end <= start) {
+      throw new IllegalArgumentException("Empty window: [" + start + ", " + end + ")");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the window {@code [start, end)}.
+   *
+   * @throws IllegalArgumentException if {@code end <= start}
+   */
+  public static Window of(long start, long end) {
+    return new Window(start, end);
+  }
+
+  /** Returns the inclusive start of this window. */
+  public long start() {
+    return start;
+  }
+
+  /** Returns the exclusive end of this window. */
+  public long end() {
+    return end;
+  }
+
+  /** Returns true if {@code timestamp} falls in {@code [start, end)}. */
+  public boolean contains(long timestamp) {
+    return timestamp >= start && timestamp < end;
+  }
+
+  /** Compares by start, then by end. */
+  @Override public int compareTo(Window that) {
+    int byStart = Long.compare(start, that.start);
+    return byStart == 0 ? Long.compare(end, that.end) : byStart;
+  }
+
+  @Override public int hashCode() {
+    return Long.hashCode(start) * 31 + Long.hashCode(end);
+  }
+
+  @Override public boolean equals(Object obj) {
+    if (obj instanceof Window) {
+      Window that = (Window) obj;
+      return start == that.start && end == that.end;
+    }
+    return false;
+  }
+
+  /** Returns the string representation in the form of {@code "[start, end)"}. */
+  @Override public String toString() {
+    return "[" + start + ", " + end + ")";
+  }
+}
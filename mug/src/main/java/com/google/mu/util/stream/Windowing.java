@@ -0,0 +1,184 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.mu.util.stream.BiStream.kv;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily groups a timestamp-ordered stream into time windows. Like the run detection of {@link
+ * BiStream#consecutiveRunsFrom}, each window is summarized incrementally into the collector's
+ * accumulator and emitted as soon as no later element can fall into it. Only the accumulators of
+ * the currently open windows are held in memory.
+ */
+final class Windowing {
+  private static final int CHARACTERISTICS =
+      Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.DISTINCT;
+
+  static <T, A, R> BiStream<Window, R> sliding(
+      Stream<T> stream,
+      ToLongFunction<? super T> timestamp,
+      long size,
+      long slide,
+      Collector<? super T, A, R> summarizer) {
+    requireNonNull(stream);
+    requireNonNull(timestamp);
+    requireNonNull(summarizer);
+    checkPositive("size", size);
+    checkPositive("slide", slide);
+    return windows(stream, () -> new Windower<T, A, R>(stream.spliterator(), timestamp, summarizer) {
+      private long nextStart = Long.MIN_VALUE;
+
+      @Override void accept(T element, long time) {
+        // Windows ending at or before this element can no longer receive elements.
+        while (!open.isEmpty() && open.peekFirst().window.end() <= time) {
+          close(open.removeFirst());
+        }
+        long lastStart = Math.floorDiv(time, slide) * slide;
+        long firstStart = Math.floorDiv(time - size, slide) * slide + slide;
+        for (long start = Math.max(firstStart, nextStart); start <= lastStart; start += slide) {
+          open.addLast(new OpenWindow<>(Window.of(start, start + size), newBuffer.get()));
+        }
+        nextStart = Math.max(nextStart, lastStart + slide);
+        for (OpenWindow<A> w : open) {
+          accumulator.accept(w.buffer, element);
+        }
+      }
+    });
+  }
+
+  static <T, A, R> BiStream<Window, R> session(
+      Stream<T> stream,
+      ToLongFunction<? super T> timestamp,
+      long gap,
+      Collector<? super T, A, R> summarizer) {
+    requireNonNull(stream);
+    requireNonNull(timestamp);
+    requireNonNull(summarizer);
+    checkPositive("gap", gap);
+    return windows(stream, () -> new Windower<T, A, R>(stream.spliterator(), timestamp, summarizer) {
+      private long sessionStart;
+
+      @Override void accept(T element, long time) {
+        OpenWindow<A> current = open.peekFirst();
+        if (current == null || current.window.end() <= time) {
+          if (current != null) {
+            close(open.removeFirst());
+          }
+          sessionStart = time;
+          current = new OpenWindow<>(null, newBuffer.get());
+          open.addFirst(current);
+        }
+        current.window = Window.of(sessionStart, time + gap);
+        accumulator.accept(current.buffer, element);
+      }
+    });
+  }
+
+  private static <R> BiStream<Window, R> windows(
+      Stream<?> stream, Supplier<? extends Spliterator<Map.Entry<Window, R>>> windower) {
+    return BiStream.fromEntries(
+        StreamSupport.stream(windower, CHARACTERISTICS, false).onClose(stream::close));
+  }
+
+  private static void checkPositive(String name, long value) {
+    if (value <= 0) {
+      throw new IllegalArgumentException(name + " (" + value + ") must be positive");
+    }
+  }
+
+  private static final class OpenWindow<A> {
+    Window window;
+    final A buffer;
+
+    OpenWindow(Window window, A buffer) {
+      this.window = window;
+      this.buffer = requireNonNull(buffer);
+    }
+  }
+
+  private abstract static class Windower<T, A, R> extends AbstractSpliterator<Map.Entry<Window, R>>
+      implements Consumer<T> {
+    private final Spliterator<? extends T> spliterator;
+    private final ToLongFunction<? super T> timestamp;
+    private final Function<A, R> finisher;
+    private final Deque<Map.Entry<Window, R>> completed = new ArrayDeque<>();
+    final Supplier<A> newBuffer;
+    final BiConsumer<A, ? super T> accumulator;
+    final Deque<OpenWindow<A>> open = new ArrayDeque<>();
+    private long lastTime = Long.MIN_VALUE;
+
+    Windower(
+        Spliterator<? extends T> spliterator,
+        ToLongFunction<? super T> timestamp,
+        Collector<? super T, A, R> summarizer) {
+      super(Long.MAX_VALUE, CHARACTERISTICS);
+      this.spliterator = spliterator;
+      this.timestamp = timestamp;
+      this.newBuffer = summarizer.supplier();
+      this.accumulator = summarizer.accumulator();
+      this.finisher = summarizer.finisher();
+    }
+
+    /** Adds {@code element} with timestamp {@code time} to the windows it belongs to. */
+    abstract void accept(T element, long time);
+
+    @Override public final boolean tryAdvance(Consumer<? super Map.Entry<Window, R>> action) {
+      while (completed.isEmpty()) {
+        if (!spliterator.tryAdvance(this)) {
+          if (open.isEmpty()) {
+            return false;
+          }
+          // End of input closes all remaining windows.
+          while (!open.isEmpty()) {
+            close(open.removeFirst());
+          }
+        }
+      }
+      action.accept(completed.removeFirst());
+      return true;
+    }
+
+    @Override public final void accept(T element) {
+      long time = timestamp.applyAsLong(element);
+      if (time < lastTime) {
+        throw new IllegalArgumentException(
+            "Timestamps out of order: " + time + " after " + lastTime);
+      }
+      lastTime = time;
+      accept(element, time);
+    }
+
+    final void close(OpenWindow<A> w) {
+      completed.addLast(kv(w.window, finisher.apply(w.buffer)));
+    }
+  }
+
+  private Windowing() {}
+}
@@ -17,8 +17,11 @@ package com.google.mu.util.stream;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.mu.util.stream.BiCollection.toBiCollection;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -116,6 +119,58 @@ public class BiCollectionTest {
     assertThat(BiCollection.of("a", 1, "b", 2).toString()).isEqualTo("[a=1, b=2]");
   }
 
+  @Test public void testHashCode_sameAsListOfEntries() {
+    assertThat(BiCollection.of("a", 1, null, 2, "c", null).hashCode())
+        .isEqualTo(
+            asList(BiStream.kv("a", 1), BiStream.kv(null, 2), BiStream.kv("c", null)).hashCode());
+  }
+
+  @Test public void testToBiCollection_parallel() {
+    BiCollection<Integer, String> biCollection = IntStream.range(0, 1000)
+        .boxed()
+        .parallel()
+        .collect(toBiCollection(i -> i, Object::toString));
+    assertThat(biCollection.size()).isEqualTo(1000);
+    assertThat(biCollection.stream().keys().collect(toList()))
+        .containsExactlyElementsIn(IntStream.range(0, 1000).boxed().collect(toList()))
+        .inOrder();
+    assertThat(biCollection.stream().allMatch((k, v) -> k.toString().equals(v))).isTrue();
+  }
+
+  @Test public void testStream_sizedAndSplittable() {
+    BiCollection<Integer, String> biCollection =
+        IntStream.range(0, 100).boxed().collect(toBiCollection(i -> i, Object::toString));
+    Spliterator<?> spliterator = biCollection.stream().mapToObj(BiStream::kv).parallel().spliterator();
+    assertThat(spliterator.getExactSizeIfKnown()).isEqualTo(100);
+    assertThat(spliterator.trySplit().getExactSizeIfKnown()).isEqualTo(50);
+  }
+
+  @Test public void testStream_parallel() {
+    BiCollection<Integer, Integer> biCollection =
+        IntStream.range(0, 1000).boxed().collect(toBiCollection(i -> i, i -> i * 2));
+    assertThat(biCollection.stream().mapToObj((k, v) -> v - k).parallel().mapToInt(i -> i).sum())
+        .isEqualTo(999 * 1000 / 2);
+  }
+
+  @Test public void testStream_collect() {
+    BiCollection<Integer, String> biCollection =
+        IntStream.range(0, 300).boxed().collect(toBiCollection(i -> i, Object::toString));
+    ImmutableMap<Integer, String> map =
+        biCollection.stream().collect(ImmutableMap::toImmutableMap);
+    assertThat(map).hasSize(300);
+    assertThat(map.get(200)).isEqualTo("200");
+    ImmutableListMultimap<Integer, String> multimap = biCollection.stream()
+        .mapKeys(k -> k % 3)
+        .collect(ImmutableListMultimap::toImmutableListMultimap);
+    assertThat(multimap.get(1)).hasSize(100);
+  }
+
+  @Test public void testStream_reStreamable() {
+    BiCollection<String, Integer> biCollection = BiCollection.of("a", 1, "b", 2);
+    assertKeyValues(biCollection).containsExactly("a", 1, "b", 2).inOrder();
+    assertKeyValues(biCollection).containsExactly("a", 1, "b", 2).inOrder();
+  }
+
   private static <K, V> MultimapSubject assertKeyValues(BiCollection<K, V> collection) {
     ImmutableListMultimap<K, V> multimap = collection.stream()
         .<ImmutableListMultimap<K, V>>collect(ImmutableListMultimap::toImmutableListMultimap);
@@ -15,15 +15,22 @@
 package com.google.mu.util.stream;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.mu.function.BiComparator.comparingKey;
+import static com.google.mu.function.BiComparator.comparingValue;
 import static com.google.mu.util.stream.BiCollectors.groupingBy;
 import static com.google.mu.util.stream.BiCollectors.toMap;
 import static com.google.mu.util.stream.BiStream.biStream;
 import static com.google.mu.util.stream.BiStreamTest.assertKeyValues;
 import static java.util.Collections.nCopies;
+import static java.util.Comparator.naturalOrder;
 import static java.util.stream.Collectors.summingInt;
 import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -80,6 +87,12 @@ public class BiCollectorsTest {
     assertThat(map).containsExactly(1, "one");
   }
 
+  @Test public void testToMap_isRecognizedSingleton() {
+    // BiStream presizes the map only when collecting with the TO_MAP singleton.
+    assertThat(BiCollectors.<String, Integer>toMap()).isSameAs(BiCollectors.TO_MAP);
+    assertThat(BiCollectors.<Integer, Object>toMap()).isSameAs(BiCollectors.<String, String>toMap());
+  }
+
   @Test public void testCounting() {
     assertThat(BiStream.of(1, "one", 2, "two").collect(BiCollectors.counting())).isEqualTo(2L);
   }
@@ -253,6 +266,154 @@ public class BiCollectorsTest {
         .inOrder();
   }
 
+  @Test public void testApproximateCountingDistinct_small() {
+    assertThat(BiStream.of("a", 1, "b", 2, "a", 1).collect(BiCollectors.approximateCountingDistinct()))
+        .isEqualTo(2);
+    assertThat(BiStream.empty().collect(BiCollectors.approximateCountingDistinct())).isEqualTo(0);
+  }
+
+  @Test public void testApproximateCountingDistinct_nulls() {
+    assertThat(BiStream.of(null, 1, "a", null, null, 1).collect(BiCollectors.approximateCountingDistinct()))
+        .isEqualTo(2);
+  }
+
+  @Test public void testApproximateCountingDistinct_large() {
+    long distinct = BiStream.from(IntStream.range(0, 300000).boxed(), i -> i % 100000, i -> "x")
+        .collect(BiCollectors.approximateCountingDistinct());
+    assertThat((double) distinct).isWithin(3000).of(100000);
+  }
+
+  @Test public void testApproximateCountingDistinct_parallel() {
+    long distinct =
+        BiStream.from(IntStream.range(0, 300000).boxed().parallel(), i -> i % 100000, i -> "x")
+            .collect(BiCollectors.approximateCountingDistinct());
+    assertThat((double) distinct).isWithin(3000).of(100000);
+  }
+
+  @Test public void testApproximateQuantiles() {
+    DoubleUnaryOperator quantiles =
+        BiStream.from(IntStream.range(0, 100000).boxed(), i -> "k", i -> i)
+            .collect(BiCollectors.approximateQuantiles((k, v) -> v));
+    assertThat(quantiles.applyAsDouble(0)).isWithin(2000).of(0);
+    assertThat(quantiles.applyAsDouble(0.5)).isWithin(2000).of(50000);
+    assertThat(quantiles.applyAsDouble(0.99)).isWithin(2000).of(99000);
+  }
+
+  @Test public void testApproximateQuantiles_exactForSmallInput() {
+    DoubleUnaryOperator quantiles = BiStream.of("a", 3.0, "b", 1.0, "c", 2.0)
+        .collect(BiCollectors.approximateQuantiles((k, v) -> v));
+    assertThat(quantiles.applyAsDouble(0)).isEqualTo(1.0);
+    assertThat(quantiles.applyAsDouble(0.5)).isEqualTo(2.0);
+    assertThat(quantiles.applyAsDouble(1)).isEqualTo(3.0);
+  }
+
+  @Test public void testApproximateQuantiles_parallel() {
+    DoubleUnaryOperator quantiles =
+        BiStream.from(IntStream.range(0, 100000).boxed().parallel(), i -> "k", i -> 99999 - i)
+            .collect(BiCollectors.approximateQuantiles((k, v) -> v));
+    assertThat(quantiles.applyAsDouble(0.25)).isWithin(2000).of(25000);
+    assertThat(quantiles.applyAsDouble(0.9)).isWithin(2000).of(90000);
+  }
+
+  @Test public void testApproximateQuantiles_empty() {
+    DoubleUnaryOperator quantiles =
+        BiStream.<String, Double>empty().collect(BiCollectors.approximateQuantiles((k, v) -> v));
+    assertThat(quantiles.applyAsDouble(0.5)).isNaN();
+  }
+
+  @Test public void testApproximateQuantiles_invalidRank() {
+    DoubleUnaryOperator quantiles =
+        BiStream.of("a", 1.0).collect(BiCollectors.approximateQuantiles((k, v) -> v));
+    assertThrows(IllegalArgumentException.class, () -> quantiles.applyAsDouble(-0.1));
+    assertThrows(IllegalArgumentException.class, () -> quantiles.applyAsDouble(1.1));
+    assertThrows(IllegalArgumentException.class, () -> quantiles.applyAsDouble(Double.NaN));
+  }
+
+  @Test public void testTopK() {
+    BiStream<String, Integer> top = BiStream.from(ImmutableMap.of("a", 3, "b", 1, "c", 5, "d", 4, "e", 2))
+        .collect(BiCollectors.topK(3, comparingValue(naturalOrder())));
+    assertKeyValues(top).containsExactly("c", 5, "d", 4, "a", 3).inOrder();
+  }
+
+  @Test public void testTopK_fewerThanK() {
+    BiStream<String, Integer> top = BiStream.of("a", 1, "b", 2)
+        .collect(BiCollectors.topK(10, comparingValue(naturalOrder())));
+    assertKeyValues(top).containsExactly("b", 2, "a", 1).inOrder();
+  }
+
+  @Test public void testTopK_byKey() {
+    BiStream<Integer, String> top = BiStream.of(1, "x", 9, "y", 5, "z")
+        .collect(BiCollectors.topK(1, comparingKey(naturalOrder())));
+    assertKeyValues(top).containsExactly(9, "y");
+  }
+
+  @Test public void testTopK_parallel() {
+    BiStream<Integer, Integer> top =
+        BiStream.from(IntStream.range(0, 10000).boxed().parallel(), i -> i % 1000, i -> i)
+            .collect(BiCollectors.topK(3, comparingValue(naturalOrder())));
+    assertKeyValues(top).containsExactly(999, 9999, 998, 9998, 997, 9997).inOrder();
+  }
+
+  @Test public void testTopK_invalidK() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BiCollectors.topK(0, comparingValue(naturalOrder())));
+  }
+
+  @Test public void testHeavyHitters_exactWhenCapacitySuffices() {
+    BiStream<String, Long> hitters = BiStream.from(Stream.of("a", "b", "a", "c", "a", "b"), k -> k, String::length)
+        .collect(BiCollectors.heavyHitters(3));
+    assertKeyValues(hitters).containsExactly("a", 3L, "b", 2L, "c", 1L).inOrder();
+  }
+
+  @Test public void testHeavyHitters_weighted() {
+    BiStream<String, Long> hitters = BiStream.of("a", 1, "b", 20, "a", 3)
+        .collect(BiCollectors.heavyHitters(10, (k, v) -> v));
+    assertKeyValues(hitters).containsExactly("b", 20L, "a", 4L).inOrder();
+  }
+
+  @Test public void testHeavyHitters_nullKey() {
+    BiStream<String, Long> hitters = BiStream.of(null, 1, null, 2, "a", 3)
+        .collect(BiCollectors.heavyHitters(2));
+    assertKeyValues(hitters).containsExactly(null, 2L, "a", 1L).inOrder();
+  }
+
+  @Test public void testHeavyHitters_skewedStreamWithSmallCapacity() {
+    // "hot" accounts for 1/3 of the stream; the rest are all distinct.
+    Map<String, Long> hitters =
+        BiStream.from(IntStream.range(0, 30000).boxed(), i -> i % 3 == 0 ? "hot" : "cold" + i, i -> i)
+            .collect(BiCollectors.heavyHitters(10))
+            .toMap();
+    assertThat(hitters.size()).isAtMost(10);
+    assertThat(hitters.get("hot")).isAtLeast(10000L);
+    assertThat(hitters.get("hot")).isAtMost(10000L + 30000 / 10);
+  }
+
+  @Test public void testHeavyHitters_parallel() {
+    Map<String, Long> hitters =
+        BiStream.from(
+                IntStream.range(0, 30000).boxed().parallel(),
+                i -> i % 3 == 0 ? "hot" : i % 5 == 0 ? "warm" : "cold" + i,
+                i -> i)
+            .collect(BiCollectors.heavyHitters(20))
+            .toMap();
+    assertThat(hitters.size()).isAtMost(20);
+    assertThat(hitters.get("hot")).isAtLeast(10000L);
+    assertThat(hitters.get("warm")).isAtLeast(4000L);
+    assertThat(hitters.get("hot")).isAtMost(10000L + 30000 / 20);
+  }
+
+  @Test public void testHeavyHitters_negativeWeight() {
+    BiStream<String, Integer> stream = BiStream.of("a", -1);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> stream.collect(BiCollectors.heavyHitters(10, (k, v) -> v)));
+  }
+
+  @Test public void testHeavyHitters_invalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> BiCollectors.heavyHitters(0));
+  }
+
   private static final class Town {
     private final String state;
     private final int population;
@@ -205,6 +205,50 @@ public class BiStreamInvariantsTest {
         .isEmpty();
   }
 
+  @Test
+  public void mapKeysIfPresent_batched() {
+    List<List<String>> batches = new ArrayList<>();
+    BiStream<String, Integer> mapped =
+        of("uno", 1, "dos", 2, "tres", 3)
+            .mapKeysIfPresent(2, keys -> {
+              batches.add(keys);
+              return ImmutableMap.of("uno", "one", "tres", "three");
+            });
+    assertKeyValues(mapped)
+        .containsExactlyEntriesIn(ImmutableMultimap.of("one", 1, "three", 3))
+        .inOrder();
+    assertThat(batches)
+        .containsExactly(asList("uno", "dos"), asList("tres"))
+        .inOrder();
+  }
+
+  @Test
+  public void mapKeysIfPresent_batched_duplicateKeysLookedUpOnce() {
+    List<List<String>> batches = new ArrayList<>();
+    BiStream<String, Integer> mapped =
+        of("uno", 1, "uno", 2, "dos", 3)
+            .mapKeysIfPresent(10, keys -> {
+              batches.add(keys);
+              return ImmutableMap.of("uno", "one");
+            });
+    assertKeyValues(mapped)
+        .containsExactlyEntriesIn(ImmutableMultimap.of("one", 1, "one", 2))
+        .inOrder();
+    assertThat(batches).containsExactly(asList("uno", "dos"));
+  }
+
+  @Test
+  public void mapKeysIfPresent_batched_empty() {
+    assertKeyValues(of().mapKeysIfPresent(10, keys -> { throw new AssertionError(); })).isEmpty();
+  }
+
+  @Test
+  public void mapKeysIfPresent_batched_invalidBatchSize() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> of("uno", 1).mapKeysIfPresent(0, keys -> ImmutableMap.of()));
+  }
+
   @Test
   public void flatMapValues() {
     assertKeyValues(of("one", 1).flatMapValues((k, v) -> Stream.of(k, v)))
@@ -235,6 +279,21 @@ public class BiStreamInvariantsTest {
     assertKeyValues(BiStream.of("uno", 1).mapValuesIfPresent(ImmutableMap.of(4, "four"))).isEmpty();
   }
 
+  @Test
+  public void mapValuesIfPresent_batched() {
+    List<List<Integer>> batches = new ArrayList<>();
+    BiStream<String, String> mapped =
+        of("uno", 1, "dos", 2, "tres", 3)
+            .mapValuesIfPresent(2, values -> {
+              batches.add(values);
+              return ImmutableMap.of(1, "one", 3, "three");
+            });
+    assertKeyValues(mapped)
+        .containsExactlyEntriesIn(ImmutableMultimap.of("uno", "one", "tres", "three"))
+        .inOrder();
+    assertThat(batches).containsExactly(asList(1, 2), asList(3)).inOrder();
+  }
+
   @Test
   public void mapValuesIfPresent_present() {
     assertKeyValues(BiStream.of("uno", 1, "dos", 2).mapValuesIfPresent(v -> Optional.of("found:" + v)))
@@ -463,6 +522,27 @@ public class BiStreamInvariantsTest {
     assertThat(of("one", 1, "two", 2).collect(toMap())).containsExactly("one", 1, "two", 2);
   }
 
+  @Test
+  public void toMap_duplicateKey() {
+    assertThrows(IllegalStateException.class, () -> of("k", 1, "k", 2).toMap());
+    assertThrows(IllegalStateException.class, () -> of("k", 1, "k", 2).collect(toMap()));
+  }
+
+  @Test
+  public void toMap_nullValue() {
+    assertThrows(NullPointerException.class, () -> of("k", null).toMap());
+  }
+
+  @Test
+  public void toMap_afterFilterAndMapValues() {
+    assertThat(
+            of("one", 1, "two", 2, "three", 3)
+                .filterKeys(k -> k.startsWith("t"))
+                .mapValues(v -> v * 10)
+                .toMap())
+        .containsExactly("two", 20, "three", 30);
+  }
+
   @Test
   public void toCollect_toMapMergingValues() {
     assertThat(of("k", 1, "k", 2).collect(toMap((v1, v2) -> v1 * 10 + v2)))
@@ -640,6 +720,18 @@ public class BiStreamInvariantsTest {
     assertThat(of(1, 2, 3, 4).flatMapToDouble((k, v) -> null).boxed()).isEmpty();
   }
 
+  @Test
+  public void dice() {
+    assertThat(
+            of("one", 1, "two", 2, "three", 3)
+                .dice(2)
+                .map(chunk -> chunk.stream().toMap())
+                .collect(toImmutableList()))
+        .containsExactly(ImmutableMap.of("one", 1, "two", 2), ImmutableMap.of("three", 3))
+        .inOrder();
+    assertThat(of().dice(1)).isEmpty();
+  }
+
   @Test
   public void limit() {
     assertKeyValues(of("one", 1, "two", 2, "three", 3).limit(2))
@@ -993,6 +1085,27 @@ public class BiStreamInvariantsTest {
             keyValues(k1, v1, k2, v2, k3, v3).entries(), Map.Entry::getKey, Map.Entry::getValue);
       }
     },
+    FROM_BI_COLLECTION {
+      @Override
+      <K, V> BiStream<K, V> newBiStream() {
+        return BiCollection.<K, V>of().stream();
+      }
+
+      @Override
+      <K, V> BiStream<K, V> newBiStream(K key, V value) {
+        return BiCollection.of(key, value).stream();
+      }
+
+      @Override
+      <K, V> BiStream<K, V> newBiStream(K k1, V v1, K k2, V v2) {
+        return BiCollection.of(k1, v1, k2, v2).stream();
+      }
+
+      @Override
+      <K, V> BiStream<K, V> newBiStream(K k1, V v1, K k2, V v2, K k3, V v3) {
+        return BiCollection.of(k1, v1, k2, v2, k3, v3).stream();
+      }
+    },
     FROM_ZIP {
       @Override
       <K, V> BiStream<K, V> newBiStream() {
@@ -20,18 +20,25 @@ import static com.google.common.truth.Truth8.assertThat;
 import static com.google.mu.util.stream.BiCollectors.toMap;
 import static com.google.mu.util.stream.BiStream.concatenating;
 import static com.google.mu.util.stream.BiStream.crossJoining;
+import static com.google.mu.util.stream.BiStream.kv;
 import static com.google.mu.util.stream.BiStream.toAdjacentPairs;
 import static com.google.mu.util.stream.MoreStreams.indexesFrom;
 import static java.util.Arrays.asList;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.counting;
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -56,6 +63,7 @@ import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.truth.IterableSubject;
 import com.google.common.truth.MultimapSubject;
+import com.google.mu.function.BiComparator;
 import com.google.mu.util.BiOptional;
 import com.google.mu.util.Substring;
 
@@ -163,6 +171,146 @@ public class BiStreamTest {
         .inOrder();
   }
 
+  @Test public void testConsecutiveRunsFrom_parallel_singleRun() {
+    assertKeyValues(BiStream.consecutiveRunsFrom(Collections.nCopies(10000, 'x').parallelStream()))
+        .containsExactly('x', 10000L);
+  }
+
+  @Test public void testConsecutiveRunsFrom_parallel_sameAsSequential() {
+    List<Integer> sorted = IntStream.range(0, 100000).map(i -> i / 7).boxed().collect(toList());
+    assertThat(BiStream.consecutiveRunsFrom(sorted.parallelStream()).toMap())
+        .containsExactlyEntriesIn(BiStream.consecutiveRunsFrom(sorted.stream()).toMap())
+        .inOrder();
+  }
+
+  @Test public void testConsecutiveRunsFrom_parallel_runsStraddlingChunks() {
+    List<Integer> input = IntStream.range(0, 10000).map(i -> (i / 1000) % 2).boxed().collect(toList());
+    assertKeyValues(BiStream.consecutiveRunsFrom(input.parallelStream(), i -> i, Collectors.summingInt(i -> 1)))
+        .containsExactly(0, 1000, 1, 1000, 0, 1000, 1, 1000, 0, 1000, 1, 1000, 0, 1000, 1, 1000, 0, 1000, 1, 1000)
+        .inOrder();
+  }
+
+  @Test public void testConsecutiveRunsFrom_parallel_preservesElementOrderWithinRun() {
+    List<Integer> input = IntStream.range(0, 1000).boxed().collect(toList());
+    assertKeyValues(BiStream.consecutiveRunsFrom(input.parallelStream(), i -> i / 500, toList()))
+        .containsExactly(0, input.subList(0, 500), 1, input.subList(500, 1000))
+        .inOrder();
+  }
+
+  @Test public void testConsecutiveRunsFrom_parallel_nullAsRuns() {
+    assertKeyValues(BiStream.consecutiveRunsFrom(Stream.of(null, null, "foo", "foo", "foo").parallel()))
+        .containsExactly(null, 2L, "foo", 3L)
+        .inOrder();
+  }
+
+  @Test public void testConsecutiveRunsFrom_parallel_isLazy() {
+    AtomicBoolean consumed = new AtomicBoolean();
+    BiStream<Integer, Long> runs =
+        BiStream.consecutiveRunsFrom(Stream.of(1, 1, 2).parallel().peek(i -> consumed.set(true)));
+    assertThat(consumed.get()).isFalse();
+    assertKeyValues(runs).containsExactly(1, 2L, 2, 1L).inOrder();
+  }
+
+  @Test public void testConsecutiveRunsFrom_parallelInfiniteSource_withLimit() {
+    Stream<Integer> infinite = Stream.iterate(0, i -> i + 1).parallel();
+    assertKeyValues(BiStream.consecutiveRunsFrom(infinite, i -> i / 3, Collectors.counting()).limit(3))
+        .containsExactly(0, 3L, 1, 3L, 2, 3L)
+        .inOrder();
+  }
+
+  @Test public void testConsecutiveRunsFrom_closesSource() {
+    AtomicBoolean closed = new AtomicBoolean();
+    BiStream.consecutiveRunsFrom(Stream.of(1, 2).parallel().onClose(() -> closed.set(true))).close();
+    assertThat(closed.get()).isTrue();
+  }
+
+  @Test public void testTumblingWindowsFrom() {
+    assertKeyValues(
+            BiStream.tumblingWindowsFrom(Stream.of(0L, 3L, 9L, 10L, 25L, 29L), t -> t, 10, toList()))
+        .containsExactly(
+            Window.of(0, 10), asList(0L, 3L, 9L),
+            Window.of(10, 20), asList(10L),
+            Window.of(20, 30), asList(25L, 29L))
+        .inOrder();
+  }
+
+  @Test public void testTumblingWindowsFrom_negativeTimestamps() {
+    assertKeyValues(BiStream.tumblingWindowsFrom(Stream.of(-11L, -1L, 0L), t -> t, 10, counting()))
+        .containsExactly(Window.of(-20, -10), 1L, Window.of(-10, 0), 1L, Window.of(0, 10), 1L)
+        .inOrder();
+  }
+
+  @Test public void testTumblingWindowsFrom_empty() {
+    assertKeyValues(BiStream.tumblingWindowsFrom(Stream.<Long>empty(), t -> t, 10, counting()))
+        .isEmpty();
+  }
+
+  @Test public void testTumblingWindowsFrom_infiniteStream() {
+    assertKeyValues(
+            BiStream.tumblingWindowsFrom(indexesFrom(0), i -> i, 3, toList()).limit(2))
+        .containsExactly(Window.of(0, 3), asList(0, 1, 2), Window.of(3, 6), asList(3, 4, 5))
+        .inOrder();
+  }
+
+  @Test public void testTumblingWindowsFrom_outOfOrder() {
+    BiStream<Window, Long> windows =
+        BiStream.tumblingWindowsFrom(Stream.of(5L, 4L), t -> t, 10, counting());
+    assertThrows(IllegalArgumentException.class, () -> windows.toMap());
+  }
+
+  @Test public void testTumblingWindowsFrom_invalidSize() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BiStream.tumblingWindowsFrom(Stream.of(1L), t -> t, 0, counting()));
+  }
+
+  @Test public void testSlidingWindowsFrom() {
+    assertKeyValues(
+            BiStream.slidingWindowsFrom(Stream.of(1L, 4L, 6L, 12L), t -> t, 10, 5, toList()))
+        .containsExactly(
+            Window.of(-5, 5), asList(1L, 4L),
+            Window.of(0, 10), asList(1L, 4L, 6L),
+            Window.of(5, 15), asList(6L, 12L),
+            Window.of(10, 20), asList(12L))
+        .inOrder();
+  }
+
+  @Test public void testSlidingWindowsFrom_skipsEmptyWindows() {
+    assertKeyValues(BiStream.slidingWindowsFrom(Stream.of(0L, 100L), t -> t, 4, 2, counting()))
+        .containsExactly(
+            Window.of(-2, 2), 1L, Window.of(0, 4), 1L, Window.of(98, 102), 1L, Window.of(100, 104), 1L)
+        .inOrder();
+  }
+
+  @Test public void testSlidingWindowsFrom_slideLargerThanSize() {
+    assertKeyValues(
+            BiStream.slidingWindowsFrom(Stream.of(0L, 1L, 2L, 3L, 4L, 5L), t -> t, 2, 4, toList()))
+        .containsExactly(Window.of(0, 2), asList(0L, 1L), Window.of(4, 6), asList(4L, 5L))
+        .inOrder();
+  }
+
+  @Test public void testSessionWindowsFrom() {
+    assertKeyValues(
+            BiStream.sessionWindowsFrom(Stream.of(1L, 3L, 7L, 20L, 24L, 40L), t -> t, 5, toList()))
+        .containsExactly(
+            Window.of(1, 12), asList(1L, 3L, 7L),
+            Window.of(20, 29), asList(20L, 24L),
+            Window.of(40, 45), asList(40L))
+        .inOrder();
+  }
+
+  @Test public void testSessionWindowsFrom_sameTimestamp() {
+    assertKeyValues(BiStream.sessionWindowsFrom(Stream.of(1L, 1L, 1L), t -> t, 1, counting()))
+        .containsExactly(Window.of(1, 2), 3L);
+  }
+
+  @Test public void testSessionWindowsFrom_closesSourceStream() {
+    AtomicBoolean closed = new AtomicBoolean();
+    BiStream.sessionWindowsFrom(Stream.of(1L).onClose(() -> closed.set(true)), t -> t, 1, counting())
+        .close();
+    assertThat(closed.get()).isTrue();
+  }
+
   @Test public void testZip_bothEmpty() {
     assertKeyValues(BiStream.zip(ImmutableList.of(), ImmutableList.of())).isEmpty();
   }
@@ -619,6 +767,38 @@ public class BiStreamTest {
         .inOrder();
   }
 
+  @Test public void testZip_randomAccessLists_sized() {
+    Spliterator<String> spliterator = BiStream.zip(asList(1, 2, 3), ImmutableList.of("a", "b"))
+        .mapToObj((i, s) -> i + s)
+        .spliterator();
+    assertThat(spliterator.getExactSizeIfKnown()).isEqualTo(2);
+  }
+
+  @Test public void testZip_randomAccessLists_parallel() {
+    List<Integer> left = IntStream.range(0, 10000).boxed().collect(toList());
+    List<Integer> right = IntStream.range(0, 10000).map(i -> i * 2).boxed().collect(toList());
+    Stream<Integer> diffs = BiStream.zip(left, right).mapToObj((l, r) -> r - l).parallel();
+    assertThat(diffs.mapToInt(i -> i).sum()).isEqualTo(9999 * 10000 / 2);
+    assertThat(BiStream.zip(left, right).mapToObj((l, r) -> r - l).parallel().collect(toList()))
+        .containsExactlyElementsIn(left)
+        .inOrder();
+  }
+
+  @Test public void testZip_randomAccessLists_lateBinding() {
+    List<Integer> left = new ArrayList<>();
+    List<String> right = new ArrayList<>();
+    BiStream<Integer, String> zipped = BiStream.zip(left, right);
+    left.add(1);
+    right.add("one");
+    assertKeyValues(zipped).containsExactly(1, "one");
+  }
+
+  @Test public void testZip_randomAccessWithSequentialList() {
+    assertKeyValues(BiStream.zip(asList(1, 2, 3), new LinkedList<>(asList("a", "b"))))
+        .containsExactly(1, "a", 2, "b")
+        .inOrder();
+  }
+
   @Test public void testToBiStreamFromSplit() {
     assertThat(Stream.of("name=joe", "age=10")
             .map(Substring.first('=')::split)
@@ -642,6 +822,159 @@ public class BiStreamTest {
     assertThat(groups).containsExactly("1", 2L, "2", 1L, "3", 2L).inOrder();
   }
 
+  @Test public void testGroupingConsecutive_empty() {
+    assertKeyValues(Stream.empty().collect(BiStream.groupingConsecutive(identity(), counting())))
+        .isEmpty();
+  }
+
+  @Test public void testGroupingConsecutive_clusteredInput() {
+    assertKeyValues(
+            Stream.of(1, 1, 2, 3, 3)
+                .collect(BiStream.groupingConsecutive(Object::toString, counting())))
+        .containsExactly("1", 2L, "2", 1L, "3", 2L)
+        .inOrder();
+  }
+
+  @Test public void testGroupingConsecutive_keyReappears() {
+    assertKeyValues(
+            Stream.of(1, 1, 2, 1).collect(BiStream.groupingConsecutive(identity(), counting())))
+        .containsExactly(1, 2L, 2, 1L, 1, 1L)
+        .inOrder();
+  }
+
+  @Test public void testGroupingConsecutive_parallel() {
+    Map<Integer, Long> groups =
+        IntStream.range(0, 10000)
+            .boxed()
+            .parallel()
+            .collect(BiStream.groupingConsecutive(n -> n / 100, counting()))
+            .toMap();
+    assertThat(groups).hasSize(100);
+    assertThat(groups.values()).containsExactlyElementsIn(Collections.nCopies(100, 100L));
+  }
+
+  @Test public void testGroupingConsecutive_parallelMatchesSequential() {
+    List<Integer> keys =
+        IntStream.range(0, 10000).map(n -> n * 7 / 3 % 5).boxed().collect(Collectors.toList());
+    List<String> sequential =
+        keys.stream()
+            .collect(BiStream.groupingConsecutive(identity(), counting()))
+            .mapToObj((k, n) -> k + "=" + n)
+            .collect(Collectors.toList());
+    for (int i = 0; i < 20; i++) {
+      assertThat(
+              keys.parallelStream()
+                  .collect(BiStream.groupingConsecutive(identity(), counting()))
+                  .mapToObj((k, n) -> k + "=" + n)
+                  .collect(Collectors.toList()))
+          .containsExactlyElementsIn(sequential)
+          .inOrder();
+    }
+  }
+
+  @Test public void testGroupingConsecutive_closedGroupFinishedEagerly() {
+    List<String> finished = new ArrayList<>();
+    Collector<CharSequence, ?, String> joining =
+        Collectors.collectingAndThen(Collectors.joining(), s -> {
+          finished.add(s);
+          return s;
+        });
+    List<List<String>> finishedWhenAccumulating = new ArrayList<>();
+    Stream.of("a", "a", "b", "c", "c", "d")
+        .peek(s -> finishedWhenAccumulating.add(new ArrayList<>(finished)))
+        .collect(BiStream.groupingConsecutive(identity(), joining));
+    // "b" was finished when the "c" group started, before "d" arrived.
+    assertThat(finishedWhenAccumulating.get(5)).containsExactly("b");
+    assertThat(finished).containsExactly("b", "cc", "aa", "d").inOrder();
+  }
+
+  @Test public void testGroupingConsecutive_nestedInConsecutiveRuns() {
+    List<String> sorted = asList("a1", "a1", "a2", "b1", "b2", "b2", "b2");
+    Map<Character, Map<Character, Long>> groups =
+        BiStream.consecutiveRunsFrom(
+                sorted.stream(),
+                s -> s.charAt(0),
+                BiStream.groupingConsecutive(s -> s.charAt(1), counting()))
+            .mapValues(BiStream::toMap)
+            .toMap();
+    assertThat(groups)
+        .containsExactly(
+            'a', ImmutableMap.of('1', 2L, '2', 1L),
+            'b', ImmutableMap.of('1', 1L, '2', 3L))
+        .inOrder();
+  }
+
+  @Test public void testDice_invalidMaxSize() {
+    assertThrows(IllegalArgumentException.class, () -> BiStream.of(1, 2).dice(0));
+    assertThrows(
+        IllegalArgumentException.class, () -> BiCollection.of(1, 2).stream().dice(-1));
+  }
+
+  @Test public void testDice_exactMultiple() {
+    List<Integer> sizes =
+        BiStream.from(IntStream.range(0, 6).boxed(), identity(), Object::toString)
+            .dice(3)
+            .map(BiCollection::size)
+            .collect(toList());
+    assertThat(sizes).containsExactly(3, 3).inOrder();
+  }
+
+  @Test public void testDice_largeMaxSize() {
+    List<BiCollection<Integer, String>> chunks =
+        BiStream.from(IntStream.range(0, 10).boxed(), identity(), Object::toString)
+            .dice(Integer.MAX_VALUE)
+            .collect(toList());
+    assertThat(chunks).hasSize(1);
+    assertKeyValues(chunks.get(0).stream())
+        .containsExactlyEntriesIn(
+            BiStream.from(IntStream.range(0, 10).boxed(), identity(), Object::toString)
+                .collect(ImmutableListMultimap::toImmutableListMultimap))
+        .inOrder();
+  }
+
+  @Test public void testDice_parallel() {
+    Map<Integer, Integer> all =
+        BiStream.from(IntStream.range(0, 10000).boxed().parallel(), identity(), n -> -n)
+            .dice(100)
+            .parallel()
+            .flatMap(chunk -> chunk.stream().mapToEntry())
+            .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue));
+    assertThat(all).hasSize(10000);
+    assertThat(all.get(123)).isEqualTo(-123);
+  }
+
+  @Test public void testDice_indexedStreamSplits() {
+    BiCollection<Integer, Integer> pairs =
+        IntStream.range(0, 1000).boxed().collect(BiCollection.toBiCollection(identity(), n -> n));
+    Spliterator<BiCollection<Integer, Integer>> chunks =
+        pairs.stream().dice(10).parallel().spliterator();
+    assertThat(chunks.estimateSize()).isEqualTo(100);
+    assertThat(chunks.trySplit()).isNotNull();
+  }
+
+  @Test public void testToMap_fromLargeMap() {
+    Map<Integer, String> source = new HashMap<>();
+    for (int i = 0; i < 10000; i++) {
+      source.put(i, Integer.toString(i));
+    }
+    assertThat(BiStream.from(source).toMap()).isEqualTo(source);
+    assertThat(BiStream.from(source).filterKeys(k -> k % 2 == 0).mapValues(String::length).toMap())
+        .hasSize(5000);
+  }
+
+  @Test public void testToMap_parallel() {
+    Map<Integer, Integer> map =
+        BiStream.from(IntStream.range(0, 10000).boxed().parallel(), identity(), n -> -n).toMap();
+    assertThat(map).hasSize(10000);
+    assertThat(map.get(123)).isEqualTo(-123);
+  }
+
+  @Test public void testToMap_parallelDuplicateKey() {
+    BiStream<Integer, Integer> duplicates =
+        BiStream.from(IntStream.range(0, 10000).boxed().parallel(), n -> n % 10, identity());
+    assertThrows(IllegalStateException.class, duplicates::toMap);
+  }
+
   @Test public void testGroupingBy_withReducer_empty() {
     Stream<String> inputs = Stream.empty();
     assertThat(inputs.collect(BiStream.groupingBy(s -> s.charAt(0), String::concat)).toMap())
@@ -795,6 +1128,68 @@ public class BiStreamTest {
         .inOrder();
   }
 
+  @Test public void testCrossJoin_smallInputs() {
+    assertKeyValues(BiStream.crossJoin(Stream.of(1, 2, 3), Stream.of("a", "bb"), (i, s) -> i != 2))
+        .containsExactly(1, "a", 3, "a", 1, "bb", 3, "bb")
+        .inOrder();
+  }
+
+  @Test public void testCrossJoin_emptyLeft() {
+    assertKeyValues(BiStream.crossJoin(Stream.empty(), Stream.of("foo"), (l, r) -> true)).isEmpty();
+  }
+
+  @Test public void testCrossJoin_emptyRight() {
+    assertKeyValues(BiStream.crossJoin(Stream.of(1, 2), Stream.empty(), (l, r) -> true)).isEmpty();
+  }
+
+  @Test public void testCrossJoin_multipleTiles_sameAsNaiveNestedLoops() {
+    List<Integer> left = IntStream.range(0, 1000).boxed().collect(toList());
+    List<Integer> right = IntStream.range(0, 700).boxed().collect(toList());
+    List<String> expected = new ArrayList<>();
+    for (int r : right) {
+      for (int l : left) {
+        if ((l + r) % 7 == 0) {
+          expected.add(l + ":" + r);
+        }
+      }
+    }
+    List<String> joined =
+        BiStream.crossJoin(left.stream(), right.stream(), (l, r) -> (l + r) % 7 == 0)
+            .mapToObj((l, r) -> l + ":" + r)
+            .collect(toList());
+    assertThat(joined).containsExactlyElementsIn(expected);
+  }
+
+  @Test public void testCrossJoin_parallel() {
+    long count =
+        BiStream.crossJoin(
+                IntStream.range(0, 1000).boxed().parallel(),
+                IntStream.range(0, 1000).boxed(),
+                (l, r) -> l < r)
+            .mapToObj((l, r) -> l)
+            .count();
+    assertThat(count).isEqualTo(1000L * 999 / 2);
+  }
+
+  @Test public void testCrossJoin_limitStopsEarly() {
+    assertKeyValues(
+            BiStream.crossJoin(indexesFrom(0).limit(1000), Stream.of("x"), (l, r) -> true).limit(2))
+        .containsExactly(0, "x", 1, "x")
+        .inOrder();
+  }
+
+  @Test public void testCrossJoin_closesInputs() {
+    AtomicBoolean leftClosed = new AtomicBoolean();
+    AtomicBoolean rightClosed = new AtomicBoolean();
+    try (BiStream<Integer, Integer> joined =
+        BiStream.crossJoin(
+            Stream.of(1).onClose(() -> leftClosed.set(true)),
+            Stream.of(2).onClose(() -> rightClosed.set(true)),
+            (l, r) -> true)) {}
+    assertThat(leftClosed.get()).isTrue();
+    assertThat(rightClosed.get()).isTrue();
+  }
+
   @Test public void testToAdjacentPairs_empty() {
     Stream<String> stream = Stream.of().collect(toAdjacentPairs()).mapToObj((a, b) -> a + ":" + b);
     assertThat(stream).isEmpty();
@@ -829,6 +1224,189 @@ public class BiStreamTest {
     assertThat(stream).containsExactly("null:1", "1:2", "2:3", "3:null").inOrder();
   }
 
+  @Test public void testSortedByKeys_spillingToDisk() {
+    BiStream<Integer, String> sorted =
+        BiStream.from(Stream.of(5, 3, 9, 1, 7, 2, 8, 4, 6, 0), identity(), Object::toString)
+            .sortedByKeys(Comparator.naturalOrder(), 3, Codec.ints(), Codec.strings());
+    assertKeyValues(sorted)
+        .containsExactly(0, "0", 1, "1", 2, "2", 3, "3", 4, "4", 5, "5", 6, "6", 7, "7", 8, "8", 9, "9")
+        .inOrder();
+  }
+
+  @Test public void testSortedByKeys_spillingToDisk_fitsInMemory() {
+    BiStream<String, Integer> sorted = BiStream.of("b", 1, "a", 2)
+        .sortedByKeys(Comparator.naturalOrder(), 100, Codec.strings(), Codec.ints());
+    assertKeyValues(sorted).containsExactly("a", 2, "b", 1).inOrder();
+  }
+
+  @Test public void testSortedByKeys_spillingToDisk_isStable() {
+    BiStream<String, Integer> sorted = BiStream.from(IntStream.range(0, 20).boxed(), i -> i % 2 == 0 ? "even" : "odd", identity())
+        .sortedByKeys(Comparator.naturalOrder(), 3, Codec.strings(), Codec.ints());
+    assertThat(sorted.filterKeys("even"::equals).values().collect(toList()))
+        .containsExactly(0, 2, 4, 6, 8, 10, 12, 14, 16, 18)
+        .inOrder();
+  }
+
+  @Test public void testSortedByValues_spillingToDisk_withNulls() {
+    BiStream<String, Long> sorted = BiStream.of("a", 3L, null, null, "c", 1L)
+        .append("d", 2L)
+        .sortedByValues(Comparator.nullsFirst(Comparator.naturalOrder()), 1, Codec.strings(), Codec.longs());
+    assertKeyValues(sorted).containsExactly(null, null, "c", 1L, "d", 2L, "a", 3L).inOrder();
+  }
+
+  @Test public void testSorted_spillingToDisk_limitThenClose() {
+    try (BiStream<Integer, Double> sorted =
+        BiStream.from(IntStream.range(0, 100).map(i -> 99 - i).boxed(), identity(), i -> i / 2.0)
+            .sorted(BiComparator.comparingKey(Comparator.naturalOrder()), 7, Codec.ints(), Codec.doubles())) {
+      assertKeyValues(sorted.limit(3)).containsExactly(0, 0.0, 1, 0.5, 2, 1.0).inOrder();
+    }
+  }
+
+  @Test public void testSorted_spillingToDisk_invalidMaxInMemory() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BiStream.of(1, 2).sortedByKeys(Comparator.naturalOrder(), 0, Codec.ints(), Codec.ints()));
+  }
+
+  @Test public void testSortedOffHeap() {
+    List<Integer> shuffled = IntStream.range(0, 1000).boxed().collect(toList());
+    Collections.shuffle(shuffled, new Random(1));
+    assertThat(
+            BiStream.from(shuffled, i -> i % 10, Object::toString)
+                .sortedOffHeap(BiComparator.comparingKey(Comparator.naturalOrder()), 30, Codec.ints(), Codec.strings())
+                .keys()
+                .collect(toList()))
+        .isEqualTo(IntStream.range(0, 1000).map(i -> i % 10).sorted().boxed().collect(toList()));
+  }
+
+  @Test public void testSortedOffHeap_isStable() {
+    BiStream<Integer, String> sorted = BiStream.from(IntStream.range(0, 100).boxed(), i -> i % 3, Object::toString)
+        .sortedOffHeap(BiComparator.comparingKey(Comparator.naturalOrder()), 7, Codec.ints(), Codec.strings());
+    assertThat(sorted.filterKeys(k -> k == 0).values().collect(toList()))
+        .isEqualTo(IntStream.range(0, 100).filter(i -> i % 3 == 0).mapToObj(Integer::toString).collect(toList()));
+  }
+
+  @Test public void testDistinctOffHeap_fitsInMemory() {
+    assertKeyValues(BiStream.of("a", 1, "b", 2, "a", 1).distinctOffHeap(10, Codec.strings(), Codec.ints()))
+        .containsExactly("a", 1, "b", 2)
+        .inOrder();
+  }
+
+  @Test public void testDistinctOffHeap_multiplePartitions() {
+    BiStream<Integer, String> distinct =
+        BiStream.from(IntStream.range(0, 10000).boxed(), i -> i % 1234, i -> "v" + (i % 1234))
+            .distinctOffHeap(100, Codec.ints(), Codec.strings());
+    assertThat(distinct.keys().collect(toList()))
+        .isEqualTo(IntStream.range(0, 1234).boxed().collect(toList()));
+  }
+
+  @Test public void testDistinctOffHeap_withNulls() {
+    assertKeyValues(
+            BiStream.of(null, 1, "a", null, null, 1).distinctOffHeap(1, Codec.strings(), Codec.ints()))
+        .containsExactly(null, 1, "a", null)
+        .inOrder();
+  }
+
+  @Test public void testDistinctOffHeap_empty() {
+    assertKeyValues(BiStream.<String, Integer>empty().distinctOffHeap(1, Codec.strings(), Codec.ints()))
+        .isEmpty();
+  }
+
+  @Test public void testDistinctOffHeap_invalidMaxInMemory() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BiStream.of(1, 2).distinctOffHeap(0, Codec.ints(), Codec.ints()));
+  }
+
+  @Test public void testJoin() {
+    BiStream<String, String> joined = BiStream.of("a", 1, "b", 2, "c", 3)
+        .join(BiStream.of("b", "two", "a", "one", "d", "four"), (n, s) -> n + ":" + s);
+    assertKeyValues(joined).containsExactly("a", "1:one", "b", "2:two").inOrder();
+  }
+
+  @Test public void testJoin_duplicateKeys() {
+    BiStream<String, String> joined =
+        BiStream.from(asList(kv("a", 1), kv("a", 2), kv("b", 3)))
+            .join(BiStream.from(asList(kv("a", "x"), kv("a", "y"))), (n, s) -> n + s);
+    assertKeyValues(joined).containsExactly("a", "1x", "a", "1y", "a", "2x", "a", "2y").inOrder();
+  }
+
+  @Test public void testJoin_buildsOnSmallerSizedSide() {
+    Map<Integer, String> small = ImmutableMap.of(3, "three", 1, "one");
+    Map<Integer, String> large = ImmutableMap.of(1, "uno", 2, "dos", 3, "tres");
+    assertKeyValues(BiStream.from(small).join(BiStream.from(large), (a, b) -> a + "/" + b))
+        .containsExactly(1, "one/uno", 3, "three/tres")
+        .inOrder();
+    assertKeyValues(BiStream.from(large).join(BiStream.from(small), (a, b) -> a + "/" + b))
+        .containsExactly(1, "uno/one", 3, "tres/three")
+        .inOrder();
+  }
+
+  @Test public void testJoin_nullKeys() {
+    BiStream<String, String> joined =
+        BiStream.of(null, 1, "a", 2).join(BiStream.of("a", "x", null, "y"), (n, s) -> n + s);
+    assertKeyValues(joined).containsExactly(null, "1y", "a", "2x").inOrder();
+  }
+
+  @Test public void testJoin_isLazy() {
+    AtomicBoolean consumed = new AtomicBoolean();
+    BiStream<String, Integer> joined = BiStream.of("a", 1)
+        .peek((k, v) -> consumed.set(true))
+        .join(BiStream.of("a", 2), Integer::sum);
+    assertThat(consumed.get()).isFalse();
+    assertKeyValues(joined).containsExactly("a", 3);
+    assertThat(consumed.get()).isTrue();
+  }
+
+  @Test public void testJoin_closesBothStreams() {
+    AtomicBoolean leftClosed = new AtomicBoolean();
+    AtomicBoolean rightClosed = new AtomicBoolean();
+    BiStream<String, Integer> left = BiStream.from(Stream.of("a").onClose(() -> leftClosed.set(true)), identity(), String::length);
+    BiStream<String, Integer> right = BiStream.from(Stream.of("a").onClose(() -> rightClosed.set(true)), identity(), String::length);
+    left.join(right, Integer::sum).close();
+    assertThat(leftClosed.get()).isTrue();
+    assertThat(rightClosed.get()).isTrue();
+  }
+
+  @Test public void testLeftJoin() {
+    BiStream<String, String> joined = BiStream.of("a", 1, "b", 2, "a", 3)
+        .leftJoin(BiStream.of("a", "one", "c", "three"), (n, s) -> n + ":" + s);
+    assertKeyValues(joined).containsExactly("a", "1:one", "b", "2:null", "a", "3:one").inOrder();
+  }
+
+  @Test public void testCoGroup() {
+    BiStream<String, String> grouped = BiStream.of("a", 1, "b", 2, "a", 3)
+        .coGroup(BiStream.of("c", 10, "a", 20), (l, r) -> l + "/" + r);
+    assertKeyValues(grouped)
+        .containsExactly("a", "[1, 3]/[20]", "b", "[2]/[]", "c", "[]/[10]")
+        .inOrder();
+  }
+
+  @Test public void testJoinSorted() {
+    BiStream<Integer, String> joined =
+        BiStream.from(asList(kv(1, "a"), kv(2, "b"), kv(2, "c"), kv(4, "d"), kv(5, "e")))
+            .joinSorted(
+                BiStream.from(asList(kv(0, "x"), kv(2, "y"), kv(2, "z"), kv(3, "w"), kv(5, "v"))),
+                Comparator.naturalOrder(),
+                String::concat);
+    assertKeyValues(joined)
+        .containsExactly(2, "by", 2, "bz", 2, "cy", 2, "cz", 5, "ev")
+        .inOrder();
+  }
+
+  @Test public void testJoinSorted_emptyInputs() {
+    assertKeyValues(BiStream.<Integer, String>empty().joinSorted(BiStream.of(1, "a"), Comparator.naturalOrder(), String::concat))
+        .isEmpty();
+    assertKeyValues(BiStream.of(1, "a").joinSorted(BiStream.<Integer, String>empty(), Comparator.naturalOrder(), String::concat))
+        .isEmpty();
+  }
+
+  @Test public void testJoinSorted_infiniteRight() {
+    BiStream<Integer, Integer> joined = BiStream.of(2, 20, 4, 40)
+        .joinSorted(BiStream.from(indexesFrom(0), identity(), identity()), Comparator.naturalOrder(), Integer::sum);
+    assertKeyValues(joined).containsExactly(2, 22, 4, 44).inOrder();
+  }
+
   @Test public void testBuilder_cannotAddAfterBuild() {
     BiStream.Builder<String, String> builder = BiStream.builder();
     assertKeyValues(builder.build()).isEmpty();
@@ -0,0 +1,68 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CodecTest {
+  @Test public void strings() throws IOException {
+    assertThat(roundTrip(Codec.strings(), "")).isEmpty();
+    assertThat(roundTrip(Codec.strings(), "hello")).isEqualTo("hello");
+    assertThat(roundTrip(Codec.strings(), "你好")).isEqualTo("你好");
+  }
+
+  @Test public void ints() throws IOException {
+    assertThat(roundTrip(Codec.ints(), 0)).isEqualTo(0);
+    assertThat(roundTrip(Codec.ints(), Integer.MIN_VALUE)).isEqualTo(Integer.MIN_VALUE);
+  }
+
+  @Test public void longs() throws IOException {
+    assertThat(roundTrip(Codec.longs(), Long.MAX_VALUE)).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test public void doubles() throws IOException {
+    assertThat(roundTrip(Codec.doubles(), -1.5)).isEqualTo(-1.5);
+    assertThat(roundTrip(Codec.doubles(), Double.NaN)).isNaN();
+  }
+
+  @Test public void multipleValues() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Codec.strings().encode("a", out);
+    Codec.longs().encode(1L, out);
+    Codec.strings().encode("b", out);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertThat(Codec.strings().decode(in)).isEqualTo("a");
+    assertThat(Codec.longs().decode(in)).isEqualTo(1L);
+    assertThat(Codec.strings().decode(in)).isEqualTo("b");
+  }
+
+  private static <T> T roundTrip(Codec<T> codec, T value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.encode(value, new DataOutputStream(bytes));
+    return codec.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
@@ -0,0 +1,69 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.function.DoublePredicate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.testing.ClassSanityTester;
+
+@RunWith(JUnit4.class)
+public class DoubleIterationTest {
+  @Test public void iteration_empty() {
+    assertThat(new DoubleIteration().iterate().toArray()).isEmpty();
+  }
+
+  @Test public void yield_eagerValues() {
+    assertThat(new DoubleIteration().yield(0.5).yield(1.5).iterate().toArray())
+        .usingExactEquality()
+        .containsExactly(0.5, 1.5)
+        .inOrder();
+  }
+
+  @Test public void bisection() {
+    class Bisection extends DoubleIteration {
+      Bisection approximate(double low, double high, DoublePredicate tooHigh) {
+        if (high - low < 1e-9) return this;
+        double mid = (low + high) / 2;
+        yield(mid);
+        if (tooHigh.test(mid)) {
+          yield(() -> approximate(low, mid, tooHigh));
+        } else {
+          yield(() -> approximate(mid, high, tooHigh));
+        }
+        return this;
+      }
+    }
+    double[] guesses = new Bisection().approximate(1, 2, x -> x * x > 2).iterate().toArray();
+    assertThat(guesses[0]).isEqualTo(1.5);
+    assertThat(guesses[guesses.length - 1]).isWithin(1e-8).of(Math.sqrt(2));
+  }
+
+  @Test public void oneTimeIteration() {
+    DoubleIteration iteration = new DoubleIteration();
+    iteration.iterate();
+    assertThrows(IllegalStateException.class, iteration::iterate);
+  }
+
+  @Test public void nullChecks() {
+    new ClassSanityTester().testNulls(DoubleIteration.class);
+  }
+}
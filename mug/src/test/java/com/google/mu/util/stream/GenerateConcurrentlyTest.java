@@ -0,0 +1,139 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.mu.util.stream.MoreStreams.generateConcurrently;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenerateConcurrentlyTest {
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After public void shutDownPool() {
+    pool.shutdownNow();
+  }
+
+  @Test public void seedOnly() {
+    assertThat(generateConcurrently(1, i -> Stream.empty(), pool).collect(toList()))
+        .containsExactly(1);
+  }
+
+  @Test public void nullFanoutTreatedAsEmpty() {
+    assertThat(generateConcurrently(1, i -> null, pool).collect(toList())).containsExactly(1);
+  }
+
+  @Test public void expandsEntireTree() {
+    // Binary tree of heap indices 1..1023.
+    List<Integer> nodes =
+        generateConcurrently(1, i -> i < 512 ? Stream.of(2 * i, 2 * i + 1) : null, pool)
+            .collect(toList());
+    assertThat(nodes)
+        .containsExactlyElementsIn(IntStream.range(1, 1024).boxed().collect(toList()));
+  }
+
+  @Test public void expandsGraphWithVisitedSet() {
+    Set<Integer> visited = ConcurrentHashMap.newKeySet();
+    visited.add(0);
+    List<Integer> nodes =
+        generateConcurrently(
+                0, i -> Stream.of((i + 1) % 100, (i + 7) % 100).filter(visited::add), pool)
+            .collect(toList());
+    assertThat(nodes)
+        .containsExactlyElementsIn(IntStream.range(0, 100).boxed().collect(toList()));
+  }
+
+  @Test public void fanoutExpandedConcurrently() {
+    CountDownLatch allStarted = new CountDownLatch(4);
+    List<Boolean> rendezvous =
+        generateConcurrently(
+                -1,
+                i -> {
+                  if (i < 0) return Stream.of(0, 1, 2, 3);
+                  allStarted.countDown();
+                  try {
+                    assertThat(allStarted.await(10, TimeUnit.SECONDS)).isTrue();
+                  } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                  }
+                  return null;
+                },
+                pool)
+            .map(i -> i >= 0)
+            .collect(toList());
+    assertThat(rendezvous).containsExactly(false, true, true, true, true);
+  }
+
+  @Test public void stepThrows_propagated() {
+    Stream<Integer> stream = generateConcurrently(
+        1,
+        i -> {
+          if (i == 4) throw new IllegalStateException("bad " + i);
+          return i < 10 ? Stream.of(i + 1) : null;
+        },
+        pool);
+    IllegalStateException thrown =
+        assertThrows(IllegalStateException.class, () -> stream.collect(toList()));
+    assertThat(thrown).hasMessageThat().isEqualTo("bad 4");
+  }
+
+  @Test public void close_stopsExpansion() throws Exception {
+    AtomicInteger expanded = new AtomicInteger();
+    CountDownLatch closed = new CountDownLatch(1);
+    try (Stream<Integer> stream =
+        generateConcurrently(
+            1,
+            i -> {
+              expanded.incrementAndGet();
+              if (i == 2) {
+                try {
+                  closed.await();
+                } catch (InterruptedException e) {
+                  throw new AssertionError(e);
+                }
+              }
+              return Stream.of(i + 1);
+            },
+            pool)) {
+      assertThat(stream.limit(2).collect(toList())).containsExactly(1, 2).inOrder();
+    }
+    closed.countDown();
+    assertThat(pool.awaitQuiescence(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(expanded.get()).isAtMost(3);
+  }
+
+  @Test public void lazilyStarted() {
+    AtomicInteger expanded = new AtomicInteger();
+    generateConcurrently(1, i -> { expanded.incrementAndGet(); return null; }, pool);
+    assertThat(pool.awaitQuiescence(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(expanded.get()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,68 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HandoffTest {
+  @Test public void interrupted_restoresInterruptStatus() {
+    InterruptedException interrupted = new InterruptedException();
+    try {
+      CancellationException cancellation = Handoff.interrupted(interrupted, "next element");
+      assertThat(cancellation)
+          .hasMessageThat()
+          .isEqualTo("Interrupted while waiting for next element");
+      assertThat(cancellation).hasCauseThat().isSameAs(interrupted);
+      assertThat(Thread.currentThread().isInterrupted()).isTrue();
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test public void propagate_runtimeExceptionRethrown() {
+    IllegalArgumentException exception = new IllegalArgumentException();
+    Throwable thrown =
+        assertThrows(IllegalArgumentException.class, () -> Handoff.propagate(exception));
+    assertThat(thrown).isSameAs(exception);
+  }
+
+  @Test public void propagate_errorRethrown() {
+    AssertionError error = new AssertionError();
+    Throwable thrown = assertThrows(AssertionError.class, () -> Handoff.propagate(error));
+    assertThat(thrown).isSameAs(error);
+  }
+
+  @Test public void propagate_checkedExceptionWrapped() {
+    IOException exception = new IOException();
+    Throwable wrapped = Handoff.propagate(exception);
+    assertThat(wrapped).isInstanceOf(IllegalStateException.class);
+    assertThat(wrapped).hasCauseThat().isSameAs(exception);
+  }
+
+  @Test public void failure_propagate() {
+    IOException exception = new IOException();
+    Throwable wrapped = new Handoff.Failure(exception).propagate();
+    assertThat(wrapped).hasCauseThat().isSameAs(exception);
+  }
+}
@@ -0,0 +1,175 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.primitives.Ints;
+import com.google.common.testing.ClassSanityTester;
+
+@RunWith(JUnit4.class)
+public class IntIterationTest {
+  @Test public void iteration_empty() {
+    assertThat(new IntIteration().iterate().toArray()).isEmpty();
+  }
+
+  @Test public void yield_eagerValues() {
+    assertThat(new IntIteration().yield(1).yield(2).yield(3).iterate().toArray())
+        .asList()
+        .containsExactly(1, 2, 3)
+        .inOrder();
+  }
+
+  // Trees with nodes numbered like a binary heap: children of n are 2n and 2n + 1.
+  @Test public void preOrder() {
+    assertThat(new HeapTree(7).preOrder(1).iterate().toArray())
+        .asList()
+        .containsExactly(1, 2, 4, 5, 3, 6, 7)
+        .inOrder();
+  }
+
+  @Test public void inOrder() {
+    assertThat(new HeapTree(7).inOrder(1).iterate().toArray())
+        .asList()
+        .containsExactly(4, 2, 5, 1, 6, 3, 7)
+        .inOrder();
+  }
+
+  @Test public void postOrder() {
+    assertThat(new HeapTree(7).postOrder(1).iterate().toArray())
+        .asList()
+        .containsExactly(4, 5, 2, 6, 7, 3, 1)
+        .inOrder();
+  }
+
+  @Test public void inOrder_largeTree() {
+    int size = 100000;
+    int[] values = new HeapTree(size).inOrder(1).iterate().toArray();
+    assertThat(values).hasLength(size);
+    assertThat(Ints.asList(values)).containsNoDuplicates();
+  }
+
+  @Test public void infiniteIteration_isLazy() {
+    class Counter extends IntIteration {
+      Counter from(int value) {
+        yield(value);
+        yield(() -> from(value + 1));
+        return this;
+      }
+    }
+    assertThat(new Counter().from(1).iterate().limit(5).toArray())
+        .asList()
+        .containsExactly(1, 2, 3, 4, 5)
+        .inOrder();
+  }
+
+  @Test public void deepTailRecursion_noStackOverflow() {
+    class Countdown extends IntIteration {
+      Countdown from(int value) {
+        if (value == 0) return this;
+        yield(value);
+        yield(() -> from(value - 1));
+        return this;
+      }
+    }
+    assertThat(new Countdown().from(1000000).iterate().asLongStream().sum())
+        .isEqualTo(500000500000L);
+  }
+
+  @Test public void yieldComputation() {
+    class SumNodes extends IntIteration {
+      private final int size;
+
+      SumNodes(int size) {
+        this.size = size;
+      }
+
+      SumNodes sum(int node, AtomicInteger result) {
+        if (node > size) return this;
+        AtomicInteger fromLeft = new AtomicInteger();
+        AtomicInteger fromRight = new AtomicInteger();
+        yield(() -> sum(2 * node, fromLeft));
+        yield(() -> sum(2 * node + 1, fromRight));
+        yield(() -> node + fromLeft.get() + fromRight.get(), result::set);
+        return this;
+      }
+    }
+    AtomicInteger total = new AtomicInteger();
+    assertThat(new SumNodes(3).sum(1, total).iterate().toArray())
+        .asList()
+        .containsExactly(2, 3, 6)
+        .inOrder();
+    assertThat(total.get()).isEqualTo(6);
+  }
+
+  @Test public void sideEffectsAreDeferred() {
+    AtomicInteger effects = new AtomicInteger();
+    IntIteration iteration = new IntIteration();
+    iteration.yield(() -> iteration.yield(effects.incrementAndGet()));
+    IntStream stream = iteration.iterate();
+    assertThat(effects.get()).isEqualTo(0);
+    assertThat(stream.toArray()).asList().containsExactly(1);
+  }
+
+  @Test public void oneTimeIteration() {
+    IntIteration iteration = new IntIteration();
+    iteration.iterate();
+    assertThrows(IllegalStateException.class, iteration::iterate);
+  }
+
+  @Test public void nullChecks() {
+    new ClassSanityTester().testNulls(IntIteration.class);
+  }
+
+  private static final class HeapTree extends IntIteration {
+    private final int size;
+
+    HeapTree(int size) {
+      this.size = size;
+    }
+
+    HeapTree preOrder(int node) {
+      if (node > size) return this;
+      yield(node);
+      yield(() -> preOrder(2 * node));
+      yield(() -> preOrder(2 * node + 1));
+      return this;
+    }
+
+    HeapTree inOrder(int node) {
+      if (node > size) return this;
+      yield(() -> inOrder(2 * node));
+      yield(node);
+      yield(() -> inOrder(2 * node + 1));
+      return this;
+    }
+
+    HeapTree postOrder(int node) {
+      if (node > size) return this;
+      yield(() -> postOrder(2 * node));
+      yield(() -> postOrder(2 * node + 1));
+      yield(node);
+      return this;
+    }
+  }
+}
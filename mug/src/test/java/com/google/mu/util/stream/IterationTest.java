@@ -16,14 +16,20 @@ package com.google.mu.util.stream;
 
 import static com.google.common.truth.Truth8.assertThat;
 import static com.google.mu.util.stream.IterationTest.Tree.tree;
+import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import org.junit.Test;
 
 import com.google.common.testing.ClassSanityTester;
+import com.google.common.truth.Truth;
 
 public class IterationTest {
   @Test
@@ -83,6 +89,130 @@ public class IterationTest {
     assertThrows(IllegalStateException.class, iteration::iterate);
   }
 
+  @Test
+  public void yield_continuationAsElement_disallowed() {
+    Iteration<Object> iteration = new Iteration<>().yield("a");
+    Object continuation = (Iteration.Continuation) () -> {};
+    assertThrows(IllegalArgumentException.class, () -> iteration.yield(continuation));
+  }
+
+  @Test
+  public void inOrder_deepLeftChain() {
+    Node<Integer> root = tree(0);
+    Node<Integer> node = root;
+    for (int i = 1; i < 1000; i++) {
+      Node<Integer> left = tree(i);
+      node.setLeft(left);
+      node = left;
+    }
+    assertThat(inOrderFrom(root).limit(3)).containsExactly(999, 998, 997).inOrder();
+    assertThat(inOrderFrom(root).skip(997)).containsExactly(2, 1, 0).inOrder();
+  }
+
+  @Test
+  public void iterateConcurrently_empty() {
+    assertThat(new Iteration<Object>().iterateConcurrently(ForkJoinPool.commonPool())).isEmpty();
+  }
+
+  @Test
+  public void iterateConcurrently_eagerElements() {
+    assertThat(new Iteration<>().yield(1).yield(2).iterateConcurrently(ForkJoinPool.commonPool()))
+        .containsExactly(1, 2);
+  }
+
+  @Test
+  public void iterateConcurrently_deepTree() {
+    Tree<String> tree = tree("a")
+        .setLeft(tree("b")
+            .setLeft("c")
+            .setRight(tree("d").setLeft("e")))
+        .setRight(tree("f")
+            .setLeft(tree("g").setRight("h")));
+    assertThat(
+            new DepthFirst<String>().inOrder(tree).iterateConcurrently(ForkJoinPool.commonPool()))
+        .containsExactly("a", "b", "c", "d", "e", "f", "g", "h");
+  }
+
+  @Test
+  public void iterateConcurrently_siblingContinuationsRunConcurrently() {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      CountDownLatch bothStarted = new CountDownLatch(2);
+      Iteration<String> iteration = new Iteration<>();
+      for (String name : asList("left", "right")) {
+        iteration.yield(() -> {
+          bothStarted.countDown();
+          try {
+            if (bothStarted.await(10, TimeUnit.SECONDS)) {
+              iteration.yield(name);
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        });
+      }
+      assertThat(iteration.iterateConcurrently(pool)).containsExactly("left", "right");
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void iterateConcurrently_elementsEmittedWhileContinuationRuns() throws Exception {
+    CountDownLatch firstConsumed = new CountDownLatch(1);
+    Iteration<String> iteration = new Iteration<>();
+    iteration.yield(() -> {
+      iteration.yield("first");
+      try {
+        iteration.yield(firstConsumed.await(10, TimeUnit.SECONDS) ? "second" : "timeout");
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+    Iterator<String> it = iteration.iterateConcurrently(ForkJoinPool.commonPool()).iterator();
+    Truth.assertThat(it.next()).isEqualTo("first");
+    firstConsumed.countDown();
+    Truth.assertThat(it.next()).isEqualTo("second");
+    Truth.assertThat(it.hasNext()).isFalse();
+  }
+
+  @Test
+  public void iterateConcurrently_continuationAsElementDisallowed() {
+    Iteration<Object> iteration = new Iteration<>();
+    Iteration.Continuation continuation = () -> {};
+    iteration.yield(() -> iteration.yield("a").yield((Object) continuation));
+    Stream<Object> stream = iteration.iterateConcurrently(ForkJoinPool.commonPool());
+    assertThrows(IllegalArgumentException.class, () -> stream.forEach(x -> {}));
+  }
+
+  @Test
+  public void iterateConcurrently_continuationThrows() {
+    Iteration<String> iteration = new Iteration<String>().yield("a");
+    iteration.yield(() -> {
+      throw new IllegalStateException("bad");
+    });
+    Stream<String> stream = iteration.iterateConcurrently(ForkJoinPool.commonPool());
+    IllegalStateException thrown =
+        assertThrows(IllegalStateException.class, () -> stream.forEach(s -> {}));
+    Truth.assertThat(thrown).hasMessageThat().isEqualTo("bad");
+  }
+
+  @Test
+  public void iterateConcurrently_yieldOutsideContinuation() {
+    Iteration<String> iteration = new Iteration<>();
+    iteration.iterateConcurrently(ForkJoinPool.commonPool());
+    assertThrows(IllegalStateException.class, () -> iteration.yield("a"));
+  }
+
+  @Test
+  public void iterateConcurrently_oneTimeIteration() {
+    Iteration<String> iteration = new Iteration<>();
+    iteration.iterate();
+    assertThrows(
+        IllegalStateException.class,
+        () -> iteration.iterateConcurrently(ForkJoinPool.commonPool()));
+  }
+
   @Test
   public void nullChecks() {
     new ClassSanityTester().testNulls(Iteration.class);
@@ -0,0 +1,83 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.testing.ClassSanityTester;
+
+@RunWith(JUnit4.class)
+public class LongIterationTest {
+  @Test public void iteration_empty() {
+    assertThat(new LongIteration().iterate().toArray()).isEmpty();
+  }
+
+  @Test public void yield_eagerValues() {
+    assertThat(new LongIteration().yield(1).yield(2).iterate().toArray())
+        .asList()
+        .containsExactly(1L, 2L)
+        .inOrder();
+  }
+
+  @Test public void fibonacci() {
+    class Fibonacci extends LongIteration {
+      Fibonacci from(long v0, long v1) {
+        yield(v0);
+        yield(() -> from(v1, v0 + v1));
+        return this;
+      }
+    }
+    assertThat(new Fibonacci().from(0, 1).iterate().limit(10).toArray())
+        .asList()
+        .containsExactly(0L, 1L, 1L, 2L, 3L, 5L, 8L, 13L, 21L, 34L)
+        .inOrder();
+  }
+
+  @Test public void yieldComputation() {
+    class Factorial extends LongIteration {
+      Factorial factorial(int n, AtomicLong result) {
+        if (n <= 1) {
+          result.set(1);
+          return this;
+        }
+        AtomicLong previous = new AtomicLong();
+        yield(() -> factorial(n - 1, previous));
+        yield(() -> n * previous.get(), result::set);
+        return this;
+      }
+    }
+    AtomicLong result = new AtomicLong();
+    assertThat(new Factorial().factorial(20, result).iterate().max().getAsLong())
+        .isEqualTo(2432902008176640000L);
+    assertThat(result.get()).isEqualTo(2432902008176640000L);
+  }
+
+  @Test public void oneTimeIteration() {
+    LongIteration iteration = new LongIteration();
+    iteration.iterate();
+    assertThrows(IllegalStateException.class, iteration::iterate);
+  }
+
+  @Test public void nullChecks() {
+    new ClassSanityTester().testNulls(LongIteration.class);
+  }
+}
@@ -0,0 +1,135 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.mu.util.stream.LongKeyedMap.toLongKeyedMap;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+
+@RunWith(JUnit4.class)
+public class LongKeyedMapTest {
+
+  @Test public void empty() {
+    LongKeyedMap<String> map = Stream.<String>empty().collect(toLongKeyedMap(Long::parseLong, s -> s));
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.size()).isEqualTo(0);
+    assertThat(map.get(1)).isNull();
+    assertThat(map.containsKey(1)).isFalse();
+    assertThat(map.keys().toArray()).isEmpty();
+    assertThat(map.stream().toMap()).isEmpty();
+    assertThat(map).isSameAs(LongKeyedMap.of());
+    assertThat(map.toString()).isEqualTo("{}");
+  }
+
+  @Test public void lookup() {
+    LongKeyedMap<String> map =
+        Stream.of("3", "1", "20").collect(toLongKeyedMap(Long::parseLong, s -> "#" + s));
+    assertThat(map.size()).isEqualTo(3);
+    assertThat(map.get(1)).isEqualTo("#1");
+    assertThat(map.get(3)).isEqualTo("#3");
+    assertThat(map.get(20)).isEqualTo("#20");
+    assertThat(map.get(2)).isNull();
+    assertThat(map.getOrDefault(2, "none")).isEqualTo("none");
+    assertThat(map.containsKey(20)).isTrue();
+    assertThat(map.containsKey(-1)).isFalse();
+  }
+
+  @Test public void iteratesInKeyOrder() {
+    LongKeyedMap<String> map =
+        Stream.of("3", "-1", "20").collect(toLongKeyedMap(Long::parseLong, s -> s));
+    assertThat(map.keys().boxed().collect(toList())).containsExactly(-1L, 3L, 20L).inOrder();
+    assertThat(map.stream().toMap()).containsExactly(-1L, "-1", 3L, "3", 20L, "20").inOrder();
+    assertThat(map.toString()).isEqualTo("{-1=-1, 3=3, 20=20}");
+  }
+
+  @Test public void fromBiStream() {
+    LongKeyedMap<String> map =
+        BiStream.from(ImmutableMap.of(2L, "two", 1L, "one")).collect(toLongKeyedMap());
+    assertThat(map.stream().toMap()).containsExactly(1L, "one", 2L, "two").inOrder();
+  }
+
+  @Test public void duplicateKeys() {
+    Stream<String> duplicates = Stream.of("1", "2", "01");
+    assertThrows(
+        IllegalStateException.class,
+        () -> duplicates.collect(toLongKeyedMap(Long::parseLong, s -> s)));
+  }
+
+  @Test public void nullValueDisallowed() {
+    assertThrows(
+        NullPointerException.class,
+        () -> Stream.of(1L).collect(toLongKeyedMap(n -> n, n -> null)));
+  }
+
+  @Test public void largeRandomInput() {
+    List<Long> keys = new Random(1).longs(100000).boxed().distinct().collect(toList());
+    LongKeyedMap<Long> map = keys.stream().collect(toLongKeyedMap(k -> k, k -> -k));
+    assertThat(map.size()).isEqualTo(keys.size());
+    for (long key : keys) {
+      assertThat(map.get(key)).isEqualTo(-key);
+    }
+    assertThat(map.keys().toArray()).isEqualTo(keys.stream().mapToLong(k -> k).sorted().toArray());
+  }
+
+  @Test public void alreadySortedInput() {
+    LongKeyedMap<Long> map = LongStream.range(0, 1000).boxed().collect(toLongKeyedMap(k -> k, k -> k));
+    assertThat(map.keys().toArray()).isEqualTo(LongStream.range(0, 1000).toArray());
+  }
+
+  @Test public void reverseSortedInputWithDuplicates() {
+    Stream<Long> keys = LongStream.range(0, 1000).map(k -> 1000 - k / 2).boxed();
+    assertThrows(IllegalStateException.class, () -> keys.collect(toLongKeyedMap(k -> k, k -> k)));
+  }
+
+  @Test public void parallel() {
+    LongKeyedMap<Integer> map =
+        IntStream.range(0, 100000).boxed().parallel().collect(toLongKeyedMap(i -> i * 3L, i -> i));
+    assertThat(map.size()).isEqualTo(100000);
+    assertThat(map.get(300)).isEqualTo(100);
+    assertThat(map.stream().mapToObj((k, v) -> k == v * 3L).parallel().allMatch(b -> b)).isTrue();
+  }
+
+  @Test public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(
+            LongKeyedMap.of(), Stream.<Long>empty().collect(toLongKeyedMap(k -> k, k -> k)))
+        .addEqualityGroup(
+            Stream.of(1L, 2L).collect(toLongKeyedMap(k -> k, Function.identity())),
+            Stream.of(2L, 1L).collect(toLongKeyedMap(k -> k, Function.identity())))
+        .addEqualityGroup(Stream.of(1L, 2L).collect(toLongKeyedMap(k -> k, k -> -k)))
+        .addEqualityGroup(Stream.of(1L).collect(toLongKeyedMap(k -> k, Function.identity())))
+        .testEquals();
+  }
+
+  @Test public void testNulls() {
+    new NullPointerTester().testAllPublicStaticMethods(LongKeyedMap.class);
+  }
+}
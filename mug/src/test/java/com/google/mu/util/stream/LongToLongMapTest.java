@@ -0,0 +1,107 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.mu.util.stream.LongToLongMap.toLongToLongMap;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+
+@RunWith(JUnit4.class)
+public class LongToLongMapTest {
+
+  @Test public void empty() {
+    LongToLongMap map = Stream.<Long>empty().collect(toLongToLongMap(k -> k, k -> k));
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.size()).isEqualTo(0);
+    assertThat(map.containsKey(1)).isFalse();
+    assertThat(map.getOrDefault(1, -1)).isEqualTo(-1);
+    assertThat(map.stream().toMap()).isEmpty();
+    assertThat(map).isSameAs(LongToLongMap.of());
+    assertThat(map.toString()).isEqualTo("{}");
+  }
+
+  @Test public void lookup() {
+    LongToLongMap map = Stream.of(3L, 1L, 20L).collect(toLongToLongMap(k -> k, k -> k * 10));
+    assertThat(map.size()).isEqualTo(3);
+    assertThat(map.getOrDefault(1, -1)).isEqualTo(10);
+    assertThat(map.getOrDefault(20, -1)).isEqualTo(200);
+    assertThat(map.getOrDefault(2, -1)).isEqualTo(-1);
+    assertThat(map.containsKey(3)).isTrue();
+    assertThat(map.containsKey(4)).isFalse();
+  }
+
+  @Test public void iteratesInKeyOrder() {
+    LongToLongMap map = Stream.of(3L, -1L, 20L).collect(toLongToLongMap(k -> k, k -> -k));
+    assertThat(map.keys().toArray()).isEqualTo(new long[] {-1, 3, 20});
+    assertThat(map.values().toArray()).isEqualTo(new long[] {1, -3, -20});
+    assertThat(map.stream().toMap()).containsExactly(-1L, 1L, 3L, -3L, 20L, -20L).inOrder();
+    assertThat(map.toString()).isEqualTo("{-1=1, 3=-3, 20=-20}");
+  }
+
+  @Test public void fromBiStream() {
+    LongToLongMap map = BiStream.from(ImmutableMap.of(2L, 20L, 1L, 10L)).collect(toLongToLongMap());
+    assertThat(map.stream().toMap()).containsExactly(1L, 10L, 2L, 20L).inOrder();
+  }
+
+  @Test public void duplicateKeys() {
+    Stream<Long> duplicates = Stream.of(1L, 2L, 1L);
+    assertThrows(
+        IllegalStateException.class, () -> duplicates.collect(toLongToLongMap(k -> k, k -> k)));
+  }
+
+  @Test public void largeRandomInput_parallel() {
+    List<Long> keys = new Random(2).longs(100000).boxed().distinct().collect(toList());
+    LongToLongMap map = keys.parallelStream().collect(toLongToLongMap(k -> k, k -> k ^ 1));
+    assertThat(map.size()).isEqualTo(keys.size());
+    for (long key : keys) {
+      assertThat(map.getOrDefault(key, key)).isEqualTo(key ^ 1);
+    }
+    assertThat(map.keys().toArray()).isEqualTo(keys.stream().mapToLong(k -> k).sorted().toArray());
+  }
+
+  @Test public void alreadySortedInput() {
+    LongToLongMap map = LongStream.range(0, 1000).boxed().collect(toLongToLongMap(k -> k, k -> k));
+    assertThat(map.values().toArray()).isEqualTo(LongStream.range(0, 1000).toArray());
+  }
+
+  @Test public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(
+            LongToLongMap.of(), Stream.<Long>empty().collect(toLongToLongMap(k -> k, k -> k)))
+        .addEqualityGroup(
+            Stream.of(1L, 2L).collect(toLongToLongMap(k -> k, k -> k)),
+            Stream.of(2L, 1L).collect(toLongToLongMap(k -> k, k -> k)))
+        .addEqualityGroup(Stream.of(1L, 2L).collect(toLongToLongMap(k -> k, k -> -k)))
+        .testEquals();
+  }
+
+  @Test public void testNulls() {
+    new NullPointerTester().testAllPublicStaticMethods(LongToLongMap.class);
+  }
+}
@@ -0,0 +1,226 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.mu.util.stream.MoreStreams.indexesFrom;
+import static com.google.mu.util.stream.MoreStreams.mapConcurrently;
+import static com.google.mu.util.stream.MoreStreams.mapConcurrentlyUnordered;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MapConcurrentlyTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After public void shutDownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test public void emptyStream() {
+    assertThat(mapConcurrently(Stream.<Integer>empty(), 3, executor, i -> i).collect(toList()))
+        .isEmpty();
+    assertThat(
+            mapConcurrentlyUnordered(Stream.<Integer>empty(), 3, executor, i -> i)
+                .collect(toList()))
+        .isEmpty();
+  }
+
+  @Test public void preservesOrder() {
+    List<Integer> results =
+        mapConcurrently(IntStream.range(0, 1000).boxed(), 8, executor, i -> {
+              sleepMillis(i % 3);
+              return i * 2;
+            })
+            .collect(toList());
+    assertThat(results)
+        .containsExactlyElementsIn(IntStream.range(0, 1000).map(i -> i * 2).boxed().toArray())
+        .inOrder();
+  }
+
+  @Test public void unordered_allResults() {
+    List<Integer> results =
+        mapConcurrentlyUnordered(IntStream.range(0, 1000).boxed(), 8, executor, i -> i * 2)
+            .collect(toList());
+    assertThat(results)
+        .containsExactlyElementsIn(IntStream.range(0, 1000).map(i -> i * 2).boxed().toArray());
+  }
+
+  @Test public void unordered_slowMappingDoesNotHoldBackOthers() {
+    CountDownLatch slowMayFinish = new CountDownLatch(1);
+    Stream<Integer> results = mapConcurrentlyUnordered(Stream.of(1, 2, 3), 3, executor, i -> {
+      if (i == 1) {
+        await(slowMayFinish);
+      }
+      return i;
+    });
+    AtomicInteger fastReceived = new AtomicInteger();
+    List<Integer> received = results.peek(i -> {
+      if (i != 1 && fastReceived.incrementAndGet() == 2) {
+        slowMayFinish.countDown();
+      }
+    }).collect(toList());
+    assertThat(received.get(2)).isEqualTo(1);
+  }
+
+  @Test public void nullResults() {
+    assertThat(mapConcurrently(Stream.of(1, 2), 2, executor, i -> null).collect(toList()))
+        .containsExactly(null, null);
+  }
+
+  @Test public void concurrencyIsBounded() {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    mapConcurrently(IntStream.range(0, 100).boxed(), 4, executor, i -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          sleepMillis(1);
+          running.decrementAndGet();
+          return i;
+        })
+        .forEach(i -> {});
+    assertThat(maxRunning.get()).isAtMost(4);
+  }
+
+  @Test public void lazyWithInfiniteInput() {
+    AtomicInteger pulled = new AtomicInteger();
+    try (Stream<Integer> results =
+        mapConcurrently(indexesFrom(0).peek(i -> pulled.incrementAndGet()), 5, executor, i -> i)) {
+      assertThat(results.limit(3).collect(toList())).containsExactly(0, 1, 2).inOrder();
+    }
+    assertThat(pulled.get()).isAtMost(8);
+  }
+
+  @Test public void exceptionPropagatedAndOthersCanceled() throws Exception {
+    CountDownLatch blockedStarted = new CountDownLatch(1);
+    AtomicBoolean blockedInterrupted = new AtomicBoolean();
+    Stream<Integer> results = mapConcurrently(Stream.of(1, 2), 2, executor, i -> {
+      if (i == 2) {
+        blockedStarted.countDown();
+        try {
+          Thread.sleep(100000);
+        } catch (InterruptedException e) {
+          blockedInterrupted.set(true);
+        }
+        return i;
+      }
+      await(blockedStarted);
+      throw new IllegalArgumentException("bad input");
+    });
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> results.collect(toList()));
+    assertThat(thrown).hasMessageThat().isEqualTo("bad input");
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(blockedInterrupted.get()).isTrue();
+  }
+
+  @Test public void closeClosesUpstream() {
+    AtomicBoolean closed = new AtomicBoolean();
+    mapConcurrently(Stream.of(1).onClose(() -> closed.set(true)), 1, executor, i -> i).close();
+    assertThat(closed.get()).isTrue();
+  }
+
+  @Test public void interruptedConsumer_cancelsHeadTask() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch mapperInterrupted = new CountDownLatch(1);
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        mapConcurrently(Stream.of(1), 1, executor, i -> {
+              started.countDown();
+              try {
+                Thread.sleep(100000);
+              } catch (InterruptedException e) {
+                mapperInterrupted.countDown();
+              }
+              return i;
+            })
+            .findFirst();
+      } catch (Throwable e) {
+        thrown.set(e);
+      }
+    });
+    consumer.start();
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    consumer.interrupt();
+    consumer.join(10000);
+    assertThat(thrown.get()).isInstanceOf(CancellationException.class);
+    assertThat(mapperInterrupted.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test public void rejectedTaskNotLeftInFlight() throws Exception {
+    AtomicInteger submissions = new AtomicInteger();
+    Iterator<Integer> it =
+        mapConcurrently(Stream.of(1, 2, 3), 3, r -> {
+              if (submissions.incrementAndGet() == 2) {
+                throw new RejectedExecutionException();
+              }
+              executor.execute(r);
+            }, i -> i * 10)
+            .iterator();
+    assertThrows(RejectedExecutionException.class, it::hasNext);
+    Future<List<Integer>> remaining = executor.submit(() -> {
+      List<Integer> results = new ArrayList<>();
+      it.forEachRemaining(results::add);
+      return results;
+    });
+    assertThat(remaining.get(10, TimeUnit.SECONDS)).containsExactly(10, 30).inOrder();
+  }
+
+  @Test public void invalidMaxConcurrency() {
+    assertThrows(
+        IllegalArgumentException.class, () -> mapConcurrently(Stream.of(1), 0, executor, i -> i));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> mapConcurrentlyUnordered(Stream.of(1), -1, executor, i -> i));
+  }
+
+  private static void sleepMillis(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
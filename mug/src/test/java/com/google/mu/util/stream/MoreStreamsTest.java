@@ -24,8 +24,10 @@ import static java.util.stream.Collectors.toList;
 import static org.junit.Assume.assumeTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
@@ -34,7 +36,11 @@ import java.util.Set;
 import java.util.Spliterator;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import org.junit.Test;
@@ -43,6 +49,8 @@ import org.junit.runners.JUnit4;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 import com.google.common.testing.ClassSanityTester;
 import com.google.common.testing.NullPointerTester;
 
@@ -140,6 +148,67 @@ public class MoreStreamsTest {
         .hasSize(1000);
   }
 
+  @Test public void flattenBalanced_sequential() {
+    Stream<Integer> flattened =
+        MoreStreams.flattenBalanced(Stream.of(Stream.of(1, 2), Stream.empty(), Stream.of(3)));
+    assertThat(flattened.isParallel()).isFalse();
+    assertThat(flattened.collect(toList())).containsExactly(1, 2, 3).inOrder();
+  }
+
+  @Test public void flattenBalanced_isUnordered() {
+    assertThat(
+            MoreStreams.flattenBalanced(Stream.of(asList(1, 2).stream()))
+                .spliterator()
+                .hasCharacteristics(Spliterator.ORDERED))
+        .isFalse();
+  }
+
+  @Test public void flattenBalanced_preservesParallelism() {
+    assertThat(MoreStreams.flattenBalanced(Stream.of(Stream.of(1)).parallel()).isParallel())
+        .isTrue();
+  }
+
+  @Test public void flattenBalanced_parallel() {
+    List<Integer> big = IntStream.range(0, 10000).boxed().collect(toList());
+    List<Integer> small = asList(-1, -2);
+    assertThat(
+            MoreStreams.flattenBalanced(Stream.of(small, big, small).parallel().map(List::stream))
+                .collect(toList()))
+        .containsExactlyElementsIn(
+            Stream.of(small, big, small).flatMap(List::stream).collect(toList()))
+        .inOrder();
+  }
+
+  @Test public void flattenBalanced_splitsWithinSizedInnerStream() {
+    Spliterator<Integer> spliterator =
+        MoreStreams.flattenBalanced(Stream.of(IntStream.range(0, 100).boxed().collect(toList()))
+                .map(List::stream))
+            .spliterator();
+    Spliterator<Integer> prefix = spliterator.trySplit();
+    assertThat(prefix).isNotNull();
+    List<Integer> elements = new ArrayList<>();
+    prefix.forEachRemaining(elements::add);
+    assertThat(elements).isNotEmpty();
+    spliterator.forEachRemaining(elements::add);
+    assertThat(elements).containsExactlyElementsIn(IntStream.range(0, 100).boxed().toArray())
+        .inOrder();
+  }
+
+  @Test public void flattenBalanced_doesNotSplitUnsizedInnerStream() {
+    Spliterator<Integer> spliterator =
+        MoreStreams.flattenBalanced(Stream.of(Stream.iterate(1, i -> i + 1))).spliterator();
+    assertThat(spliterator.trySplit()).isNull();
+  }
+
+  @Test public void flattenBalanced_parallelWithLeadingInfiniteStream() {
+    assertThat(
+            MoreStreams.flattenBalanced(Stream.of(Stream.iterate(1, i -> i + 1), Stream.of(100)))
+                .parallel()
+                .limit(1000)
+                .collect(toList()))
+        .hasSize(1000);
+  }
+
   @Test public void diceParallelStream() {
     assertThat(MoreStreams.dice(IntStream.range(1, 8).boxed().parallel(), 2)
             .flatMap(List::stream).collect(toList()))
@@ -149,6 +218,253 @@ public class MoreStreamsTest {
     .containsExactly(1, 2, 3, 4, 5);
   }
 
+  @Test public void diceByWeight() {
+    assertThat(MoreStreams.dice(Stream.of("a", "bb", "ccc", "d", "ee"), 4, String::length)
+            .collect(toList()))
+        .containsExactly(asList("a", "bb"), asList("ccc", "d"), asList("ee"))
+        .inOrder();
+  }
+
+  @Test public void diceByWeight_overweightElementFormsItsOwnChunk() {
+    assertThat(MoreStreams.dice(Stream.of("a", "toolong", "b"), 3, String::length)
+            .collect(toList()))
+        .containsExactly(asList("a"), asList("toolong"), asList("b"))
+        .inOrder();
+  }
+
+  @Test public void diceByWeight_weigherCalledOncePerElement() {
+    AtomicInteger calls = new AtomicInteger();
+    List<List<Integer>> chunks =
+        MoreStreams.dice(Stream.of(2, 2, 2, 2, 2), 5, (Integer w) -> {
+              calls.incrementAndGet();
+              return w;
+            })
+            .collect(toList());
+    assertThat(chunks).containsExactly(asList(2, 2), asList(2, 2), asList(2)).inOrder();
+    assertThat(calls.get()).isEqualTo(5);
+  }
+
+  @Test public void diceByWeight_zeroWeights() {
+    assertThat(MoreStreams.dice(Stream.of(1, 2, 3), 1, n -> 0).collect(toList()))
+        .containsExactly(asList(1, 2, 3));
+  }
+
+  @Test public void diceByWeight_hugeWeightsDoNotOverflow() {
+    assertThat(
+            MoreStreams.dice(Stream.of(1L, Long.MAX_VALUE, Long.MAX_VALUE), Long.MAX_VALUE, n -> n)
+                .collect(toList()))
+        .containsExactly(asList(1L), asList(Long.MAX_VALUE), asList(Long.MAX_VALUE))
+        .inOrder();
+  }
+
+  @Test public void diceByWeight_empty() {
+    assertThat(MoreStreams.dice(Stream.<String>empty(), 1, String::length)).isEmpty();
+  }
+
+  @Test public void diceByWeight_negativeWeight() {
+    Stream<List<Integer>> diced = MoreStreams.dice(Stream.of(1), 1, n -> -1);
+    assertThrows(IllegalArgumentException.class, () -> diced.collect(toList()));
+  }
+
+  @Test public void diceByWeight_invalidMaxWeight() {
+    assertThrows(
+        IllegalArgumentException.class, () -> MoreStreams.dice(Stream.of(1), 0, n -> 1));
+  }
+
+  @Test public void diceByWeight_parallel() {
+    List<Integer> elements = IntStream.range(0, 10000).boxed().collect(toList());
+    List<List<Integer>> chunks =
+        MoreStreams.dice(elements.stream().parallel(), 10, n -> 3).collect(toList());
+    assertThat(chunks.stream().flatMap(List::stream).collect(toList()))
+        .containsExactlyElementsIn(elements);
+    assertThat(chunks.stream().allMatch(chunk -> chunk.size() <= 3)).isTrue();
+  }
+
+  @Test public void diceWithLinger_closesChunkAfterLingerTime() {
+    AtomicLong clock = new AtomicLong();
+    Stream<Integer> slow = Stream.of(1, 2, 3, 4, 5).peek(n -> clock.addAndGet(10));
+    assertThat(MoreStreams.dice(slow, 100, Duration.ofNanos(25), clock::get).collect(toList()))
+        .containsExactly(asList(1, 2, 3, 4), asList(5))
+        .inOrder();
+  }
+
+  @Test public void diceWithLinger_maxSizeStillApplies() {
+    assertThat(MoreStreams.dice(Stream.of(1, 2, 3), 2, Duration.ofDays(1)).collect(toList()))
+        .containsExactly(asList(1, 2), asList(3))
+        .inOrder();
+  }
+
+  @Test public void diceWithLinger_zeroLinger() {
+    assertThat(MoreStreams.dice(Stream.of(1, 2), 10, Duration.ZERO).collect(toList()))
+        .containsExactly(asList(1), asList(2))
+        .inOrder();
+  }
+
+  @Test public void diceWithLinger_invalidArgs() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MoreStreams.dice(Stream.of(1), 0, Duration.ofSeconds(1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MoreStreams.dice(Stream.of(1), 1, Duration.ofSeconds(-1)));
+  }
+
+  @Test public void diceIntStream() {
+    assertThat(MoreStreams.dice(IntStream.range(1, 8), 3).map(Ints::asList).collect(toList()))
+        .containsExactly(asList(1, 2, 3), asList(4, 5, 6), asList(7))
+        .inOrder();
+  }
+
+  @Test public void diceIntStream_unknownSize() {
+    assertThat(
+            MoreStreams.dice(IntStream.iterate(1, i -> i + 1).limit(40), 100)
+                .map(Ints::asList)
+                .collect(toList()))
+        .containsExactly(IntStream.rangeClosed(1, 40).boxed().collect(toList()));
+  }
+
+  @Test public void diceIntStream_empty() {
+    assertThat(MoreStreams.dice(IntStream.empty(), 3).collect(toList())).isEmpty();
+  }
+
+  @Test public void diceIntStream_parallel() {
+    assertThat(
+            MoreStreams.dice(IntStream.range(0, 1000).parallel(), 7)
+                .flatMapToInt(IntStream::of)
+                .boxed()
+                .collect(toList()))
+        .containsExactlyElementsIn(IntStream.range(0, 1000).boxed().collect(toList()))
+        .inOrder();
+  }
+
+  @Test public void diceIntStream_invalidMaxSize() {
+    assertThrows(IllegalArgumentException.class, () -> MoreStreams.dice(IntStream.of(1), 0));
+  }
+
+  @Test public void diceLongStream() {
+    assertThat(
+            MoreStreams.dice(LongStream.rangeClosed(1, 5), 2).map(Longs::asList).collect(toList()))
+        .containsExactly(asList(1L, 2L), asList(3L, 4L), asList(5L))
+        .inOrder();
+  }
+
+  @Test public void diceLongStream_closesUnderlyingStream() {
+    AtomicInteger closed = new AtomicInteger();
+    MoreStreams.dice(LongStream.of(1).onClose(closed::incrementAndGet), 2).close();
+    assertThat(closed.get()).isEqualTo(1);
+  }
+
+  @Test public void diceLongStream_invalidMaxSize() {
+    assertThrows(IllegalArgumentException.class, () -> MoreStreams.dice(LongStream.of(1), -1));
+  }
+
+  @Test public void forEachChunk() {
+    List<List<Integer>> chunks = new ArrayList<>();
+    MoreStreams.forEachChunk(
+        Stream.of(1, 2, 3, 4, 5), 2, chunk -> chunks.add(new ArrayList<>(chunk)));
+    assertThat(chunks).containsExactly(asList(1, 2), asList(3, 4), asList(5)).inOrder();
+  }
+
+  @Test public void forEachChunk_reusesBuffer() {
+    List<List<Integer>> chunks = new ArrayList<>();
+    MoreStreams.forEachChunk(Stream.of(1, 2, 3, 4), 2, chunks::add);
+    assertThat(chunks).hasSize(2);
+    assertThat(chunks.get(0)).isSameAs(chunks.get(1));
+  }
+
+  @Test public void forEachChunk_chunkIsReadOnly() {
+    MoreStreams.forEachChunk(
+        Stream.of(1),
+        2,
+        chunk -> assertThrows(UnsupportedOperationException.class, () -> chunk.add(2)));
+  }
+
+  @Test public void forEachChunk_empty() {
+    MoreStreams.forEachChunk(
+        Stream.empty(), 2, chunk -> { throw new AssertionError(chunk); });
+  }
+
+  @Test public void forEachChunk_invalidMaxSize() {
+    assertThrows(
+        IllegalArgumentException.class, () -> MoreStreams.forEachChunk(Stream.of(1), 0, c -> {}));
+  }
+
+  @Test public void forEachChunk_intStream() {
+    List<List<Integer>> chunks = new ArrayList<>();
+    MoreStreams.forEachChunk(
+        IntStream.rangeClosed(1, 5),
+        2,
+        (buffer, length) -> chunks.add(Ints.asList(Arrays.copyOf(buffer, length))));
+    assertThat(chunks).containsExactly(asList(1, 2), asList(3, 4), asList(5)).inOrder();
+  }
+
+  @Test public void forEachChunk_intStream_reusesBuffer() {
+    List<int[]> buffers = new ArrayList<>();
+    MoreStreams.forEachChunk(IntStream.range(0, 9), 3, (buffer, length) -> buffers.add(buffer));
+    assertThat(buffers).hasSize(3);
+    assertThat(buffers.get(0)).isSameAs(buffers.get(1));
+    assertThat(buffers.get(0)).isSameAs(buffers.get(2));
+  }
+
+  @Test public void forEachChunk_intStream_unknownSize() {
+    List<Integer> lengths = new ArrayList<>();
+    List<Integer> elements = new ArrayList<>();
+    MoreStreams.forEachChunk(
+        IntStream.iterate(0, i -> i + 1).limit(100),
+        40,
+        (buffer, length) -> {
+          lengths.add(length);
+          elements.addAll(Ints.asList(buffer).subList(0, length));
+        });
+    assertThat(lengths).containsExactly(40, 40, 20).inOrder();
+    assertThat(elements).containsExactlyElementsIn(IntStream.range(0, 100).boxed().toArray())
+        .inOrder();
+  }
+
+  @Test public void forEachChunk_intStream_empty() {
+    MoreStreams.forEachChunk(
+        IntStream.empty(), 2, (buffer, length) -> { throw new AssertionError(length); });
+  }
+
+  @Test public void forEachChunk_intStream_invalidMaxSize() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MoreStreams.forEachChunk(IntStream.of(1), 0, (buffer, length) -> {}));
+  }
+
+  @Test public void forEachChunk_longStream() {
+    List<List<Long>> chunks = new ArrayList<>();
+    MoreStreams.forEachChunk(
+        LongStream.rangeClosed(1, 5),
+        2,
+        (buffer, length) -> chunks.add(Longs.asList(Arrays.copyOf(buffer, length))));
+    assertThat(chunks).containsExactly(asList(1L, 2L), asList(3L, 4L), asList(5L)).inOrder();
+  }
+
+  @Test public void forEachChunk_longStream_reusesBuffer() {
+    List<long[]> buffers = new ArrayList<>();
+    MoreStreams.forEachChunk(LongStream.range(0, 4), 2, (buffer, length) -> buffers.add(buffer));
+    assertThat(buffers).hasSize(2);
+    assertThat(buffers.get(0)).isSameAs(buffers.get(1));
+  }
+
+  @Test public void forEachChunk_longStream_invalidMaxSize() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MoreStreams.forEachChunk(LongStream.of(1), -1, (buffer, length) -> {}));
+  }
+
+  @Test public void diceLongStream_unknownSize() {
+    assertThat(
+            MoreStreams.dice(LongStream.iterate(1, i -> i + 1).limit(40), 30)
+                .map(Longs::asList)
+                .collect(toList()))
+        .containsExactly(
+            LongStream.rangeClosed(1, 30).boxed().collect(toList()),
+            LongStream.rangeClosed(31, 40).boxed().collect(toList()))
+        .inOrder();
+  }
+
   @Test public void diceSpliteratorIsNonNull() {
     Spliterator<?> spliterator = asList(1).spliterator();
     assertThat(spliterator.hasCharacteristics(Spliterator.NONNULL)).isFalse();
@@ -223,6 +539,52 @@ public class MoreStreamsTest {
     assertThat(queue).isEmpty();
   }
 
+  @Test public void whileNotNull_batched_sequential() {
+    Queue<String> queue = new ArrayDeque<>(asList("one", "two", "three"));
+    assertThat(whileNotNull(queue::poll, 1, 8)).containsExactly("one", "two", "three").inOrder();
+    assertThat(queue).isEmpty();
+  }
+
+  @Test public void whileNotNull_batched_empty() {
+    assertThat(whileNotNull(() -> null, 1, 1)).isEmpty();
+    assertThat(whileNotNull(() -> null, 2, 8).parallel()).isEmpty();
+  }
+
+  @Test public void whileNotNull_batched_parallel() {
+    AtomicInteger counter = new AtomicInteger();
+    Supplier<Integer> supplier = () -> {
+      int n = counter.getAndIncrement();
+      return n < 10000 ? n : null;
+    };
+    List<Integer> elements = whileNotNull(supplier, 1, 64).parallel().collect(toList());
+    assertThat(elements).containsExactlyElementsIn(IntStream.range(0, 10000).boxed().toArray());
+  }
+
+  @Test public void whileNotNull_batched_batchSizesGrowUntilMax() {
+    AtomicInteger counter = new AtomicInteger();
+    Spliterator<Integer> spliterator =
+        whileNotNull(() -> counter.getAndIncrement(), 1, 4).spliterator();
+    assertThat(spliterator.trySplit().estimateSize()).isEqualTo(1);
+    assertThat(spliterator.trySplit().estimateSize()).isEqualTo(2);
+    assertThat(spliterator.trySplit().estimateSize()).isEqualTo(4);
+    assertThat(spliterator.trySplit().estimateSize()).isEqualTo(4);
+    assertThat(counter.get()).isEqualTo(11);
+  }
+
+  @Test public void whileNotNull_batched_lastBatchIsPartial() {
+    Queue<Integer> queue = new ArrayDeque<>(asList(1, 2, 3));
+    Spliterator<Integer> spliterator = whileNotNull(queue::poll, 2, 2).spliterator();
+    assertThat(spliterator.trySplit().estimateSize()).isEqualTo(2);
+    assertThat(spliterator.trySplit().estimateSize()).isEqualTo(1);
+    assertThat(spliterator.trySplit()).isNull();
+    assertThat(spliterator.estimateSize()).isEqualTo(0);
+  }
+
+  @Test public void whileNotNull_batched_invalidBatchSizes() {
+    assertThrows(IllegalArgumentException.class, () -> whileNotNull(() -> 1, 0, 1));
+    assertThrows(IllegalArgumentException.class, () -> whileNotNull(() -> 1, 2, 1));
+  }
+
   @Test public void removingFromQueue_noConcurrentModification() {
     Queue<String> queue = new ArrayDeque<>();
     queue.add("one");
@@ -0,0 +1,127 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class OffHeapBufferTest {
+  @Test public void empty() throws IOException {
+    try (OffHeapBuffer buffer = new OffHeapBuffer()) {
+      assertThat(buffer.size()).isEqualTo(0);
+      assertThat(buffer.input(0).read()).isEqualTo(-1);
+    }
+  }
+
+  @Test public void writeThenRead() throws IOException {
+    try (OffHeapBuffer buffer = new OffHeapBuffer()) {
+      DataOutputStream out = buffer.output();
+      out.writeInt(42);
+      out.writeUTF("hello");
+      out.writeLong(-1);
+      DataInputStream in = buffer.input(0);
+      assertThat(in.readInt()).isEqualTo(42);
+      assertThat(in.readUTF()).isEqualTo("hello");
+      assertThat(in.readLong()).isEqualTo(-1);
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test public void readFromPosition() throws IOException {
+    try (OffHeapBuffer buffer = new OffHeapBuffer()) {
+      DataOutputStream out = buffer.output();
+      out.writeInt(1);
+      long position = buffer.size();
+      out.writeInt(2);
+      assertThat(buffer.input(position).readInt()).isEqualTo(2);
+    }
+  }
+
+  @Test public void acrossArenas() throws IOException {
+    try (OffHeapBuffer buffer = new OffHeapBuffer()) {
+      DataOutputStream out = buffer.output();
+      byte[] big = new byte[3 << 20];
+      for (int i = 0; i < big.length; i++) {
+        big[i] = (byte) i;
+      }
+      out.writeByte(7);
+      out.write(big);
+      for (int i = 0; i < 1 << 19; i++) {
+        out.writeLong(i);
+      }
+      DataInputStream in = buffer.input(0);
+      assertThat(in.readByte()).isEqualTo(7);
+      byte[] read = new byte[big.length];
+      in.readFully(read);
+      assertThat(read).isEqualTo(big);
+      for (int i = 0; i < 1 << 19; i++) {
+        assertThat(in.readLong()).isEqualTo(i);
+      }
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test public void skip() throws IOException {
+    try (OffHeapBuffer buffer = new OffHeapBuffer()) {
+      DataOutputStream out = buffer.output();
+      out.writeInt(1);
+      out.writeInt(2);
+      DataInputStream in = buffer.input(0);
+      assertThat(in.skipBytes(4)).isEqualTo(4);
+      assertThat(in.readInt()).isEqualTo(2);
+      assertThat(in.skipBytes(4)).isEqualTo(0);
+    }
+  }
+
+  @Test public void readFromPosition_acrossGrowingArenas() throws IOException {
+    try (OffHeapBuffer buffer = new OffHeapBuffer()) {
+      DataOutputStream out = buffer.output();
+      for (int i = 0; i < 1 << 20; i++) {
+        out.writeInt(i);
+      }
+      for (int i = 0; i < 1 << 20; i += 997) {
+        assertThat(buffer.input(i * 4L).readInt()).isEqualTo(i);
+      }
+      assertThat(buffer.input(buffer.size() - 4).readInt()).isEqualTo((1 << 20) - 1);
+    }
+  }
+
+  @Test public void close_fullSizeArenasReused() throws IOException {
+    OffHeapBuffer buffer = new OffHeapBuffer();
+    DataOutputStream out = buffer.output();
+    out.write(new byte[3 * OffHeapBuffer.MAX_ARENA_SIZE]);
+    int pooledBefore = OffHeapBuffer.pooledArenas();
+    buffer.close();
+    assertThat(buffer.size()).isEqualTo(0);
+    assertThat(OffHeapBuffer.pooledArenas()).isGreaterThan(pooledBefore);
+    assertThat(OffHeapBuffer.pooledArenas()).isAtMost(OffHeapBuffer.MAX_POOLED_ARENAS);
+    try (OffHeapBuffer reused = new OffHeapBuffer()) {
+      DataOutputStream reusedOut = reused.output();
+      reusedOut.write(new byte[2 * OffHeapBuffer.MAX_ARENA_SIZE]);
+      reusedOut.writeInt(42);
+      DataInputStream in = reused.input(2L * OffHeapBuffer.MAX_ARENA_SIZE);
+      assertThat(in.readInt()).isEqualTo(42);
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static com.google.mu.util.stream.MoreStreams.indexesFrom;
+import static com.google.mu.util.stream.MoreStreams.prefetch;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PrefetchTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After public void shutDownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test public void emptyStream() {
+    assertThat(prefetch(Stream.empty(), 1, executor).collect(toList())).isEmpty();
+  }
+
+  @Test public void preservesOrder() {
+    List<Integer> elements = IntStream.range(0, 10000).boxed().collect(toList());
+    assertThat(prefetch(elements.stream(), 16, executor).collect(toList()))
+        .containsExactlyElementsIn(elements)
+        .inOrder();
+  }
+
+  @Test public void nullElements() {
+    assertThat(prefetch(Stream.of("a", null, "b"), 1, executor).collect(toList()))
+        .containsExactly("a", null, "b")
+        .inOrder();
+  }
+
+  @Test public void parallelUpstream() {
+    assertThat(prefetch(IntStream.range(0, 1000).boxed().parallel(), 8, executor).count())
+        .isEqualTo(1000);
+  }
+
+  @Test public void lazy() {
+    AtomicBoolean started = new AtomicBoolean();
+    Stream<Integer> stream =
+        prefetch(Stream.of(1).peek(i -> started.set(true)), 1, r -> {
+          started.set(true);
+          executor.execute(r);
+        });
+    assertThat(started.get()).isFalse();
+    assertThat(stream.findFirst()).hasValue(1);
+  }
+
+  @Test public void producerRunsAtMostDepthAhead() throws Exception {
+    AtomicInteger produced = new AtomicInteger();
+    try (Stream<Integer> stream =
+        prefetch(indexesFrom(0).peek(i -> produced.incrementAndGet()), 3, executor)) {
+      assertThat(stream.limit(1).collect(toList())).containsExactly(0);
+      Thread.sleep(200);
+      // 1 consumed + 3 in queue + 1 blocked on put
+      assertThat(produced.get()).isAtMost(5);
+    }
+  }
+
+  @Test public void exceptionPropagatedAfterPrecedingElements() {
+    Stream<Integer> failing = Stream.of(1, 2, 3).peek(i -> {
+      if (i == 3) throw new UncheckedIOException(new IOException("disk error"));
+    });
+    List<Integer> consumed = new ArrayList<>();
+    UncheckedIOException thrown =
+        assertThrows(
+            UncheckedIOException.class,
+            () -> prefetch(failing, 1, executor).forEach(consumed::add));
+    assertThat(thrown).hasCauseThat().hasMessageThat().isEqualTo("disk error");
+    assertThat(consumed).containsExactly(1, 2).inOrder();
+  }
+
+  @Test public void closeCancelsProducerAndClosesUpstream() throws Exception {
+    CountDownLatch producerStopped = new CountDownLatch(1);
+    AtomicBoolean upstreamClosed = new AtomicBoolean();
+    Stream<Integer> infinite = indexesFrom(0).onClose(() -> upstreamClosed.set(true));
+    Stream<Integer> stream = prefetch(infinite, 2, r -> executor.execute(() -> {
+      r.run();
+      producerStopped.countDown();
+    }));
+    assertThat(stream.limit(3).collect(toList())).containsExactly(0, 1, 2).inOrder();
+    stream.close();
+    assertThat(producerStopped.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(upstreamClosed.get()).isTrue();
+  }
+
+  @Test public void closeWhileProducing_upstreamClosedAfterProducerExits() throws Exception {
+    AtomicBoolean advancing = new AtomicBoolean();
+    AtomicBoolean closedWhileAdvancing = new AtomicBoolean();
+    CountDownLatch upstreamClosed = new CountDownLatch(1);
+    Stream<Integer> slow = indexesFrom(0).peek(i -> {
+      advancing.set(true);
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        advancing.set(false);
+      }
+    }).onClose(() -> {
+      closedWhileAdvancing.set(advancing.get());
+      upstreamClosed.countDown();
+    });
+    Stream<Integer> stream = prefetch(slow, 1, executor);
+    assertThat(stream.findFirst()).hasValue(0);
+    stream.close();
+    assertThat(upstreamClosed.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(closedWhileAdvancing.get()).isFalse();
+  }
+
+  @Test public void closeBeforeConsuming_closesUpstream() {
+    AtomicBoolean upstreamClosed = new AtomicBoolean();
+    AtomicBoolean producerStarted = new AtomicBoolean();
+    Stream<Integer> upstream = Stream.of(1).onClose(() -> upstreamClosed.set(true));
+    prefetch(upstream, 1, r -> producerStarted.set(true)).close();
+    assertThat(upstreamClosed.get()).isTrue();
+    assertThat(producerStarted.get()).isFalse();
+  }
+
+  @Test public void closeAfterExhausted_closesUpstream() throws Exception {
+    // The producer may not have exited yet, in which case it closes the upstream.
+    CountDownLatch upstreamClosed = new CountDownLatch(1);
+    try (Stream<Integer> stream =
+        prefetch(Stream.of(1, 2).onClose(upstreamClosed::countDown), 1, executor)) {
+      assertThat(stream.collect(toList())).containsExactly(1, 2).inOrder();
+    }
+    assertThat(upstreamClosed.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test public void interruptedProducer_failsConsumer() throws Exception {
+    ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+    try {
+      Iterator<Integer> it = prefetch(indexesFrom(0), 1, producerExecutor).iterator();
+      assertThat(it.next()).isEqualTo(0);
+      producerExecutor.shutdownNow();
+      Future<?> consumer = executor.submit(() -> {
+        while (it.hasNext()) {
+          it.next();
+        }
+      });
+      ExecutionException thrown =
+          assertThrows(ExecutionException.class, () -> consumer.get(10, TimeUnit.SECONDS));
+      assertThat(thrown).hasCauseThat().isInstanceOf(CancellationException.class);
+      assertThat(thrown.getCause()).hasCauseThat().isInstanceOf(InterruptedException.class);
+    } finally {
+      producerExecutor.shutdownNow();
+    }
+  }
+
+  @Test public void interruptedConsumer() {
+    Stream<Integer> stream = prefetch(Stream.<Integer>generate(() -> {
+      try {
+        Thread.sleep(10000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return 1;
+    }), 1, executor);
+    Thread.currentThread().interrupt();
+    try {
+      assertThrows(CancellationException.class, () -> stream.findFirst());
+      assertThat(Thread.currentThread().isInterrupted()).isTrue();
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test public void invalidDepth() {
+    assertThrows(IllegalArgumentException.class, () -> prefetch(Stream.of(1), 0, executor));
+  }
+
+  @Test public void upstreamNotConsumedInCallingThread() {
+    Thread caller = Thread.currentThread();
+    List<Boolean> onCaller =
+        prefetch(Stream.of(1, 2).map(i -> Thread.currentThread() == caller), 1, executor)
+            .collect(toList());
+    assertThat(onCaller).containsExactlyElementsIn(Arrays.asList(false, false));
+  }
+}
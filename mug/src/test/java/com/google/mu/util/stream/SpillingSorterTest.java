@@ -0,0 +1,147 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SpillingSorterTest {
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test public void cascadingMerge_sortsAllPairs() throws IOException {
+    List<Integer> shuffled = shuffled(1000);
+    try (BiStream<Integer, String> sorted = sort(shuffled, 10, 3, Codec.ints())) {
+      assertThat(sorted.keys().collect(toList()))
+          .containsExactlyElementsIn(IntStream.range(0, 1000).boxed().toArray())
+          .inOrder();
+    }
+    assertThat(tempDir.getRoot().list()).isEmpty();
+  }
+
+  @Test public void cascadingMerge_isStable() throws IOException {
+    List<Integer> input = IntStream.range(0, 500).boxed().collect(toList());
+    try (BiStream<Integer, Integer> sorted = SpillingSorter.sort(
+        BiStream.from(input, i -> i % 3, i -> i),
+        Map.Entry.comparingByKey(),
+        7,
+        Codec.ints(),
+        Codec.ints(),
+        2,
+        tempDir.getRoot().toPath())) {
+      assertThat(sorted.filterKeys(k -> k == 1).values().collect(toList()))
+          .containsExactlyElementsIn(input.stream().filter(i -> i % 3 == 1).toArray())
+          .inOrder();
+    }
+  }
+
+  @Test public void cascadingMerge_finalMergeReadsAtMostMaxFanInFiles() throws IOException {
+    try (BiStream<Integer, String> sorted = sort(shuffled(1000), 10, 4, Codec.ints())) {
+      assertThat(sorted.limit(1).keys().collect(toList())).containsExactly(0);
+      // 100 spilled runs were merged down to at most 3 files, plus the in-memory run.
+      assertThat(tempDir.getRoot().list().length).isAtMost(3);
+    }
+    assertThat(tempDir.getRoot().list()).isEmpty();
+  }
+
+  @Test public void tempFilesDeleted_afterLimitThenClose() throws IOException {
+    try (BiStream<Integer, String> sorted = sort(shuffled(1000), 10, 3, Codec.ints())) {
+      assertThat(sorted.limit(2).keys().collect(toList())).containsExactly(0, 1).inOrder();
+      assertThat(tempDir.getRoot().list()).isNotEmpty();
+    }
+    assertThat(tempDir.getRoot().list()).isEmpty();
+  }
+
+  @Test public void tempFilesDeleted_afterExceptionDuringMerge() throws IOException {
+    AtomicInteger decoded = new AtomicInteger();
+    Codec<Integer> failingCodec = new Codec<Integer>() {
+      @Override public void encode(Integer value, DataOutput out) throws IOException {
+        Codec.ints().encode(value, out);
+      }
+
+      @Override public Integer decode(DataInput in) throws IOException {
+        if (decoded.incrementAndGet() > 300) {
+          throw new IOException("corrupt");
+        }
+        return Codec.ints().decode(in);
+      }
+    };
+    try (BiStream<Integer, String> sorted = sort(shuffled(1000), 10, 3, failingCodec)) {
+      assertThrows(RuntimeException.class, () -> sorted.keys().collect(toList()));
+    }
+    assertThat(tempDir.getRoot().list()).isEmpty();
+  }
+
+  @Test public void tempFilesDeleted_afterExceptionDuringFinalMerge() throws IOException {
+    AtomicInteger decoded = new AtomicInteger();
+    Codec<Integer> failingCodec = new Codec<Integer>() {
+      @Override public void encode(Integer value, DataOutput out) throws IOException {
+        Codec.ints().encode(value, out);
+      }
+
+      @Override public Integer decode(DataInput in) throws IOException {
+        if (decoded.incrementAndGet() > 50) {
+          throw new IOException("corrupt");
+        }
+        return Codec.ints().decode(in);
+      }
+    };
+    // 10 runs and fan-in of 64: no cascading, the failure happens while streaming the result.
+    try (BiStream<Integer, String> sorted = sort(shuffled(100), 10, 64, failingCodec)) {
+      assertThrows(RuntimeException.class, () -> sorted.keys().collect(toList()));
+    }
+    assertThat(tempDir.getRoot().list()).isEmpty();
+  }
+
+  @Test public void invalidMaxFanIn() {
+    assertThrows(
+        IllegalArgumentException.class, () -> sort(shuffled(10), 10, 1, Codec.ints()));
+  }
+
+  private BiStream<Integer, String> sort(
+      List<Integer> keys, int maxInMemory, int maxFanIn, Codec<Integer> keyCodec) {
+    return SpillingSorter.sort(
+        BiStream.from(keys, k -> k, Object::toString),
+        Map.Entry.comparingByKey(),
+        maxInMemory,
+        keyCodec,
+        Codec.strings(),
+        maxFanIn,
+        tempDir.getRoot().toPath());
+  }
+
+  private static List<Integer> shuffled(int size) {
+    List<Integer> list = IntStream.range(0, size).boxed().collect(toList());
+    Collections.shuffle(list, new Random(1));
+    return list;
+  }
+}
@@ -0,0 +1,61 @@
+/*****************************************************************************
+ * ------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");           *
+ * you may not use this file except in compliance with the License.          *
+ * You may obtain a copy of the License at                                   *
+ *                                                                           *
+ * http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                           *
+ * Unless required by applicable law or agreed to in writing, software       *
+ * distributed under the License is distributed on an "AS IS" BASIS,         *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ * See the License for the specific language governing permissions and       *
+ * limitations under the License.                                            *
+ *****************************************************************************/
+package com.google.mu.util.stream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.testing.EqualsTester;
+
+@RunWith(JUnit4.class)
+public class WindowTest {
+  @Test public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(Window.of(0, 10), Window.of(0, 10))
+        .addEqualityGroup(Window.of(0, 5))
+        .addEqualityGroup(Window.of(5, 10))
+        .testEquals();
+  }
+
+  @Test public void testAccessors() {
+    Window window = Window.of(-5, 10);
+    assertThat(window.start()).isEqualTo(-5);
+    assertThat(window.end()).isEqualTo(10);
+    assertThat(window.toString()).isEqualTo("[-5, 10)");
+  }
+
+  @Test public void testContains() {
+    Window window = Window.of(0, 10);
+    assertThat(window.contains(0)).isTrue();
+    assertThat(window.contains(9)).isTrue();
+    assertThat(window.contains(10)).isFalse();
+    assertThat(window.contains(-1)).isFalse();
+  }
+
+  @Test public void testCompareTo() {
+    assertThat(Window.of(0, 10)).isLessThan(Window.of(1, 2));
+    assertThat(Window.of(0, 5)).isLessThan(Window.of(0, 10));
+    assertThat(Window.of(0, 5)).isEquivalentAccordingToCompareTo(Window.of(0, 5));
+  }
+
+  @Test public void testEmptyWindow() {
+    assertThrows(IllegalArgumentException.class, () -> Window.of(1, 1));
+    assertThrows(IllegalArgumentException.class, () -> Window.of(2, 1));
+  }
+}